@@ -0,0 +1,39 @@
+package swordandshield.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the benchmarks and writes the results as JSON so two runs can be
+ * compared, e.g. before and after a change, to catch regressions.
+ *
+ * Usage: BenchmarkRunner [regex of benchmarks to run] [result file]
+ * By default every benchmark runs and the results go in
+ * benchmarks/results/jmh-[date].json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "swordandshield\\..*Benchmarks";
+        String result = args.length > 1 ? args[1] :
+                "benchmarks/results/jmh-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+
+        File parent = new File(result).getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+        System.out.println("Results written to " + result);
+    }
+}
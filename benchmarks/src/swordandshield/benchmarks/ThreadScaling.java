@@ -0,0 +1,69 @@
+package swordandshield.benchmarks;
+
+import swordandshield.controllers.ai.MctsController;
+import swordandshield.models.GameEngine;
+import swordandshield.models.Player;
+import swordandshield.simulation.Tournament;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Measures how the throughput of a Tournament and of MctsController scales
+ * with threads, which JMH's fixed thread count benchmarks don't show. The
+ * thread counts take turns over a few rounds so JIT warm up doesn't favour
+ * the later ones, and the best run of each is compared to one thread.
+ * Speedups past the number of cores the machine has can't be linear.
+ *
+ * Usage: ThreadScaling [max threads] [millis per run]
+ * By default 1, 2, 4, 8 and 16 threads are measured for 2000ms a run.
+ */
+public class ThreadScaling {
+
+    private static final int ROUNDS = 3;
+    private static final int MAX_TURNS = 200;
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        System.out.printf("%d cores available%n", Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        new Tournament(0, MAX_TURNS).run(20000, 1); // Warm up, and size the runs
+        int games = (int) (20000 * millis * 1e6 / (System.nanoTime() - start));
+        System.out.printf("Tournament games/sec, %d games a run%n", games);
+        print(measure(maxThreads, threads -> {
+            long began = System.nanoTime();
+            new Tournament(threads, MAX_TURNS).run(games, threads);
+            return games / ((System.nanoTime() - began) / 1e9);
+        }));
+
+        GameEngine position = new GameEngine();
+        position.create('B', 0);
+        position.pass();
+        System.out.printf("MCTS playouts/sec, %dms a run%n", millis);
+        print(measure(maxThreads, threads -> {
+            MctsController mcts = new MctsController(Player.ColorIdentity.GREEN, millis, threads, 1);
+            mcts.chooseAction(position.getRound());
+            return mcts.getPlayoutsPerSecond();
+        }));
+    }
+
+    /**
+     * @return best throughput of each power of two number of threads up to maxThreads
+     */
+    private static double[] measure(int maxThreads, IntToDoubleFunction run) {
+        double[] best = new double[Integer.numberOfTrailingZeros(Integer.highestOneBit(maxThreads)) + 1];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < best.length; i++) {
+                best[i] = Math.max(best[i], run.applyAsDouble(1 << i));
+            }
+        }
+        return best;
+    }
+
+    private static void print(double[] best) {
+        for (int i = 0; i < best.length; i++) {
+            System.out.printf("%3d threads: %10.0f  %5.2fx%n", 1 << i, best[i], best[i] / best[0]);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package swordandshield.controllers.parsingController;
+
+import org.openjdk.jmh.annotations.*;
+import swordandshield.controllers.parsingController.nodes._ParseNode;
+import swordandshield.models.MoveGenerator;
+
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing a single command line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmarks {
+
+    @Param({"create B 90", "move B up", "rotate B 270", "pass"})
+    public String command;
+
+    private Parser parser;
+    private Lexer lexer;
+    private int allowed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        parser = new Parser();
+        lexer = new Lexer(repeating(command + "\n"));
+        allowed = 1 << MoveGenerator.PASS | 1 << MoveGenerator.CREATE | 1 << MoveGenerator.MOVE
+                | 1 << MoveGenerator.ROTATE | 1 << MoveGenerator.UNDO;
+    }
+
+    @Benchmark
+    public _ParseNode parseTurn() {
+        return parser.parseTurn(allowed, lexer);
+    }
+
+    /**
+     * A reader that never runs out, it gives the same text over and over
+     */
+    private static Reader repeating(String text) {
+        char[] chars = text.toCharArray();
+        return new Reader() {
+            private int pos;
+
+            @Override
+            public int read(char[] buf, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    buf[off + i] = chars[pos];
+                    pos = (pos + 1) % chars.length;
+                }
+                return len;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+}
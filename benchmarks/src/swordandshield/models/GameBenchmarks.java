@@ -0,0 +1,45 @@
+package swordandshield.models;
+
+import org.openjdk.jmh.annotations.*;
+import swordandshield.simulation.Tournament;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end throughput of whole games, reported as games per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameBenchmarks {
+
+    private static final int MAX_TURNS = 200;
+    private static final int TOURNAMENT_GAMES = 1000;
+
+    private GameEngine engine;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new GameEngine();
+        random = new SplittableRandom(1);
+    }
+
+    @Benchmark
+    public Player randomGame() {
+        return engine.playRandomGame(random, MAX_TURNS);
+    }
+
+    /**
+     * A whole single threaded tournament, each op is TOURNAMENT_GAMES games
+     */
+    @Benchmark
+    @OperationsPerInvocation(TOURNAMENT_GAMES)
+    public Tournament.Results tournament() {
+        return new Tournament(1, MAX_TURNS).run(TOURNAMENT_GAMES, 1);
+    }
+}
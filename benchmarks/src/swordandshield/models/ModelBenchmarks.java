@@ -0,0 +1,112 @@
+package swordandshield.models;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of the model's hot paths. Lives in the models package
+ * so it can reach the package private Board methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmarks {
+
+    private Round midGame;
+    private Round cloneTarget;
+    private Round clone;
+
+    private Round round;
+    private Piece piece;
+    private Piece chainStart;
+    private Piece spare;
+    private Coord emptyCell;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        midGame = midGame(1);
+        clone = midGame.deepClone();
+        cloneTarget = midGame.deepClone();
+
+        // A single piece next to an empty cell, plus a line of four pieces to push
+        GameEngine engine = new GameEngine();
+        engine.reset();
+        engine.create('B', 0);
+        round = engine.getRound();
+        piece = round.currPlayer.getPiecesOnBoard().get(0);
+        spare = round.currPlayer.getPiecesAvailable().get(0);
+        emptyCell = new Coord(5, 5);
+
+        // Moved from green's available pieces to its board pieces, so the zones match the board
+        Player green = round.getPlayerbyColor(Player.ColorIdentity.GREEN);
+        for (int i = 0; i < 4; i++) {
+            Piece p = green.getPiecesAvailable().get(0);
+            green.getPiecesAvailable().remove(p);
+            p.addToPlayersBoardPieces(new Coord(2 + i, 4));
+            round.board.placeAt(p, 2 + i, 4);
+        }
+        chainStart = round.board.getPieceAtPos(4, 2);
+    }
+
+    /**
+     * Plays random turns from the start until there are a few pieces on the board
+     */
+    static Round midGame(long seed) {
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(seed);
+        do {
+            engine.reset();
+            for (int turn = 0; turn < 12 && !engine.isGameOver(); turn++) {
+                engine.playRandomTurn(random);
+                engine.pass();
+            }
+        } while (engine.isGameOver());
+        return engine.getRound();
+    }
+
+    @Benchmark
+    public Round deepClone() {
+        return midGame.deepClone();
+    }
+
+    @Benchmark
+    public Round setCloneFields() {
+        cloneTarget.setCloneFields(clone);
+        return cloneTarget;
+    }
+
+    @Benchmark
+    public void pieceMove() {
+        piece.move(round, Piece.Direction.WEST);
+        piece.move(round, Piece.Direction.EAST);
+    }
+
+    @Benchmark
+    public Piece rotatePieceCW() {
+        piece.rotatePieceCW(1);
+        return piece;
+    }
+
+    @Benchmark
+    public int detAdjacentPieceLength() {
+        return chainStart.detAdjacentPieceLength(round, chainStart.getPos(), Piece.Direction.EAST, 0);
+    }
+
+    /**
+     * Places an available piece on an empty cell the way creating one does,
+     * see Board.putPieceOnGrid(), then clears the cell again so every
+     * invocation starts from the same position
+     */
+    @Benchmark
+    public void setPieceToPos(Blackhole bh) {
+        round.board.setPieceToPos(spare, emptyCell);
+        bh.consume(round.board);
+        round.board.clearAt(emptyCell.getX(), emptyCell.getY());
+    }
+}
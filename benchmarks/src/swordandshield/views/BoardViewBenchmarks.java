@@ -0,0 +1,58 @@
+package swordandshield.views;
+
+import org.openjdk.jmh.annotations.*;
+import swordandshield.models.GameEngine;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of drawing the whole board. Standard out is swapped for a stream
+ * that throws everything away so the terminal isn't what's measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardViewBenchmarks {
+
+    private PrintStream realOut;
+    private BoardView boardView;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        realOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }));
+
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(1);
+        do {
+            engine.reset();
+            for (int turn = 0; turn < 12 && !engine.isGameOver(); turn++) {
+                engine.playRandomTurn(random);
+                engine.pass();
+            }
+        } while (engine.isGameOver());
+        boardView = new BoardView(engine.getRound());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(realOut);
+    }
+
+    @Benchmark
+    public void draw() {
+        boardView.draw();
+    }
+}
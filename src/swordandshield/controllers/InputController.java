@@ -29,6 +29,14 @@ public class InputController implements Serializable {
         return parser.getInput(round);
     }
 
+    /**
+     * @return true once there is no more input to take turns from,
+     *         e.g. commands were piped in and all of them have been read
+     */
+    public boolean isFinished() {
+        return parser.isFinished();
+    }
+
     public void runTestCommands(Round round) {
         while (testCommandsToExecute.size() > 0) {
             testCommandsToExecute.poll().execute(round);
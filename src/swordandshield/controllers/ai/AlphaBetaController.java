@@ -0,0 +1,318 @@
+package swordandshield.controllers.ai;
+
+import swordandshield.controllers.InputController;
+import swordandshield.controllers.parsingController.nodes.*;
+import swordandshield.models.*;
+
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * An InputController that lets the computer play one of the players. For
+ * the computer's turns it picks each action with an iterative deepening
+ * alpha-beta search, the other player's turns still come from the keyboard.
+ *
+ * A turn is several actions by the same player ended by a pass, so the
+ * search works one action per ply and only swaps between maximising and
+ * minimising when a pass hands the turn over. Actions are tried and taken
+ * back on the real round using its undo records.
+ *
+ * Results are kept in a TranspositionTable by Zobrist key, so a position
+ * reached again, by a different order of actions or in the next iteration,
+ * isn't searched again and its best action is tried first. The table can be
+ * shared with other controllers searching at the same time.
+ */
+public class AlphaBetaController extends InputController {
+
+    private static final int WIN = 1000000;
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int MAX_DEPTH = 64;
+    // Scores this close to WIN are wins or losses a number of plies away
+    private static final int WIN_BOUND = WIN - MAX_DEPTH;
+
+    private static final int DEFAULT_TABLE_MB = 16;
+
+    private final Player.ColorIdentity color;
+    private final long budgetMillis;
+    private final TranspositionTable table;
+
+    // Per ply buffers so the search doesn't allocate as it goes
+    private transient int[][] actions;
+    private transient PassState[] passStates;
+
+    private transient Player rootPlayer;
+    private transient long deadline;
+    private transient boolean aborted;
+    private transient long nodes;
+    private transient int bestRootAction;
+
+    // Stats of the last search
+    private long lastNodes;
+    private long lastNanos;
+    private int lastDepth;
+
+    /**
+     * @param color colour of the player the computer plays
+     * @param budgetMillis time to spend searching for each action
+     */
+    public AlphaBetaController(Player.ColorIdentity color, long budgetMillis) {
+        this(color, budgetMillis, new TranspositionTable(DEFAULT_TABLE_MB));
+    }
+
+    /**
+     * @param color colour of the player the computer plays
+     * @param budgetMillis time to spend searching for each action
+     * @param table table of results, may be shared with other controllers and threads
+     */
+    public AlphaBetaController(Player.ColorIdentity color, long budgetMillis, TranspositionTable table) {
+        this.color = color;
+        this.budgetMillis = budgetMillis;
+        this.table = table;
+    }
+
+    @Override
+    public _ParseNode takeTurn(Round round) {
+        if (round.currPlayer.token != color) return super.takeTurn(round);
+
+        int action = chooseAction(round);
+        System.out.println("Computer plays: " + MoveGenerator.toString(action) +
+                " (depth " + lastDepth + ", " + lastNodes + " nodes, " + getNodesPerSecond() + " nodes/sec)");
+        return toParseNode(action);
+    }
+
+    /**
+     * Searches for the best action for the current player within the time budget.
+     * The round is left exactly as it was found.
+     * @param round round to search
+     * @return packed action, see MoveGenerator
+     */
+    public int chooseAction(Round round) {
+        if (actions == null) {
+            actions = new int[MAX_DEPTH + 1][MoveGenerator.MAX_ACTIONS];
+            passStates = new PassState[MAX_DEPTH + 1];
+            for (int i = 0; i < passStates.length; i++) passStates[i] = new PassState();
+        }
+        boolean recordUndo = round.recordUndo;
+        round.recordUndo = true;
+
+        long start = System.nanoTime();
+        deadline = start + budgetMillis * 1000000L;
+        rootPlayer = round.currPlayer;
+        nodes = 0;
+        aborted = false;
+        table.newSearch();
+
+        int best = MoveGenerator.encode(MoveGenerator.PASS, 0, 0);
+        bestRootAction = best;
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            int score = search(round, depth, 0, -INFINITY, INFINITY);
+            if (aborted) break;
+            best = bestRootAction;
+            lastDepth = depth;
+            if (Math.abs(score) >= WIN_BOUND) break; // Found a forced win or loss
+        }
+
+        round.recordUndo = recordUndo;
+        lastNodes = nodes;
+        lastNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    private int search(Round round, int depth, int ply, int alpha, int beta) {
+        nodes++;
+        if ((nodes & 1023) == 0 && System.nanoTime() > deadline) aborted = true;
+        if (aborted) return 0;
+        if (depth == 0 || round.state == Round.STATE.GAMEOVER) return evaluate(round, ply);
+
+        boolean maximising = round.currPlayer == rootPlayer;
+        long key = round.getZobristKey();
+        long entry = table.probe(key);
+        int entryAction = -1;
+        if (entry != 0) {
+            entryAction = TranspositionTable.action(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                // The table keeps scores for the player to move, flip them for the minimising player
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (!maximising) {
+                    score = -score;
+                    if (bound != TranspositionTable.EXACT) bound = bound == TranspositionTable.LOWER ? TranspositionTable.UPPER : TranspositionTable.LOWER;
+                }
+                if (bound == TranspositionTable.EXACT) return score;
+                if (bound == TranspositionTable.LOWER) alpha = Math.max(alpha, score);
+                else beta = Math.min(beta, score);
+                if (alpha >= beta) return score;
+            }
+        }
+        int alphaBefore = alpha, betaBefore = beta;
+
+        int[] buffer = actions[ply];
+        int n = MoveGenerator.generate(round, buffer);
+        if (entryAction >= 0) moveToFront(buffer, n, entryAction);
+        if (ply == 0) moveToFront(buffer, n, bestRootAction);
+
+        int best = maximising ? -INFINITY : INFINITY;
+        int bestAction = bestRootAction;
+        for (int i = 0; i < n; i++) {
+            int action = buffer[i];
+            // Rotating by 0 does nothing but use up the piece, the same as leaving it alone
+            if (MoveGenerator.type(action) == MoveGenerator.ROTATE && MoveGenerator.arg(action) == 0) continue;
+            if (!make(round, action, ply)) continue;
+            int score = search(round, depth - 1, ply + 1, alpha, beta);
+            unmake(round, action, ply);
+            if (aborted) return 0;
+
+            if (maximising ? score > best : score < best) {
+                best = score;
+                bestAction = action;
+            }
+            if (maximising) alpha = Math.max(alpha, score);
+            else beta = Math.min(beta, score);
+            if (alpha >= beta) break;
+        }
+        if (ply == 0) bestRootAction = bestAction;
+
+        int bound = best <= alphaBefore ? TranspositionTable.UPPER :
+                best >= betaBefore ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        if (!maximising && bound != TranspositionTable.EXACT) {
+            bound = bound == TranspositionTable.LOWER ? TranspositionTable.UPPER : TranspositionTable.LOWER;
+        }
+        if (best != INFINITY && best != -INFINITY) {
+            table.store(key, bestAction, toTable(maximising ? best : -best, ply), depth, bound);
+        }
+        return best;
+    }
+
+    /**
+     * Wins and losses are scored by how many plies away from the root they are.
+     * In the table they are kept as plies away from the position instead, so
+     * they mean the same when the position comes up at another ply.
+     */
+    private static int toTable(int score, int ply) {
+        if (score >= WIN_BOUND) return score + ply;
+        if (score <= -WIN_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN_BOUND) return score - ply;
+        if (score <= -WIN_BOUND) return score + ply;
+        return score;
+    }
+
+    private static void moveToFront(int[] buffer, int n, int action) {
+        for (int i = 0; i < n; i++) {
+            if (buffer[i] == action) {
+                buffer[i] = buffer[0];
+                buffer[0] = action;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scores the round from the point of view of the player the search is for.
+     * Pieces on the board are worth more than pieces still to be created, and
+     * pieces closer to the other player's face are worth a little more.
+     */
+    private int evaluate(Round round, int ply) {
+        Player opponent = round.players.get(0) == rootPlayer ? round.players.get(1) : round.players.get(0);
+        if (round.state == Round.STATE.GAMEOVER) {
+            // Prefer quicker wins and slower losses
+            return rootPlayer.lost ? -WIN + ply : WIN - ply;
+        }
+        return material(rootPlayer, opponent) - material(opponent, rootPlayer);
+    }
+
+    private static int material(Player player, Player opponent) {
+        int score = 6 * player.getPiecesAvailable().size();
+        List<Piece> onBoard = player.getPiecesOnBoard();
+        for (int i = 0; i < onBoard.size(); i++) {
+            Coord pos = onBoard.get(i).getPos();
+            int distance = Math.abs(pos.getX() - opponent.homeFace.getX()) +
+                    Math.abs(pos.getY() - opponent.homeFace.getY());
+            score += 10 + (18 - distance);
+        }
+        return score;
+    }
+
+    // Make and unmake
+
+    private boolean make(Round round, int action, int ply) {
+        if (MoveGenerator.type(action) == MoveGenerator.PASS) {
+            passStates[ply].save(round);
+            round.changePlayer();
+            return true;
+        }
+        return MoveGenerator.apply(round, action);
+    }
+
+    private void unmake(Round round, int action, int ply) {
+        if (MoveGenerator.type(action) == MoveGenerator.PASS) passStates[ply].restore(round);
+        else round.undo();
+    }
+
+    /**
+     * What passing the turn throws away: the passing player's flags, which of
+     * their pieces were altered, and the undo records of their turn
+     */
+    private static class PassState {
+        private Player player;
+        private int turnState;
+        private Stack<UndoRecord> history;
+        private Stack<UndoRecord> spare = new Stack<>();
+
+        void save(Round round) {
+            player = round.currPlayer;
+            turnState = player.getTurnState();
+            history = round.prevMoves;
+            round.prevMoves = spare;
+        }
+
+        void restore(Round round) {
+            spare = round.prevMoves;
+            spare.clear();
+            round.prevMoves = history;
+            history = null;
+            round.currPlayer = player;
+            player.setTurnState(turnState);
+        }
+    }
+
+    // Conversion and stats
+
+    /**
+     * Turns a packed action into the same node the parser would have made for it
+     */
+    static _ParseNode toParseNode(int action) {
+        String name = String.valueOf(MoveGenerator.letterChar(action));
+        switch (MoveGenerator.type(action)) {
+            case MoveGenerator.CREATE:
+                return new CreateNode(name, 90 * MoveGenerator.arg(action));
+            case MoveGenerator.MOVE:
+                return new MoveNode(name, MoveGenerator.direction(action));
+            case MoveGenerator.ROTATE:
+                return new RotateNode(name, 90 * MoveGenerator.arg(action));
+            case MoveGenerator.UNDO:
+                return new UndoNode();
+            default:
+                return new PassNode();
+        }
+    }
+
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    public long getNodesPerSecond() {
+        return lastNanos == 0 ? 0 : lastNodes * 1000000000L / lastNanos;
+    }
+}
@@ -0,0 +1,271 @@
+package swordandshield.controllers.ai;
+
+import swordandshield.controllers.InputController;
+import swordandshield.controllers.parsingController.nodes._ParseNode;
+import swordandshield.models.GameEngine;
+import swordandshield.models.MoveGenerator;
+import swordandshield.models.Player;
+import swordandshield.models.Round;
+import swordandshield.models.Snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An InputController that lets the computer play one of the players using
+ * Monte Carlo Tree Search. It is a drop in alternative to AlphaBetaController
+ * and suits this game better as one turn can alter every piece on the board,
+ * which makes the branching factor far too big to search exhaustively.
+ *
+ * The search uses root parallelism: every thread grows its own tree from a
+ * private copy of the position, so threads never share a node and need no
+ * locks. The copies are loaded from a Snapshot taken before the threads
+ * start, so they never read the live round either. When the time is up the
+ * visit counts of the root actions of every tree are added together and the
+ * most visited action is played.
+ */
+public class MctsController extends InputController {
+
+    // Exploration constant of UCT, sqrt(2)
+    private static final double EXPLORATION = 1.41;
+    // Turns a playout goes on for before it's called a draw
+    private static final int PLAYOUT_TURNS = 60;
+
+    private final Player.ColorIdentity color;
+    private final long budgetMillis;
+    private final int threads;
+    private final SplittableRandom seeds;
+
+    private transient ExecutorService pool;
+    private transient GameEngine[] engines;
+    // Each thread's copy of the position being searched, engines are reset to it every iteration
+    private transient GameEngine[] origins;
+
+    // Stats of the last search
+    private long lastPlayouts;
+    private long lastNanos;
+
+    /**
+     * @param color colour of the player the computer plays
+     * @param budgetMillis time to spend searching for each action
+     * @param threads number of trees grown in parallel
+     * @param seed seed for the playouts
+     */
+    public MctsController(Player.ColorIdentity color, long budgetMillis, int threads, long seed) {
+        this.color = color;
+        this.budgetMillis = budgetMillis;
+        this.threads = threads;
+        this.seeds = new SplittableRandom(seed);
+    }
+
+    @Override
+    public _ParseNode takeTurn(Round round) {
+        if (round.currPlayer.token != color) return super.takeTurn(round);
+
+        int action = chooseAction(round);
+        System.out.println("Computer plays: " + MoveGenerator.toString(action) +
+                " (" + lastPlayouts + " playouts on " + threads + " threads, " +
+                getPlayoutsPerSecond() + " playouts/sec)");
+        return AlphaBetaController.toParseNode(action);
+    }
+
+    /**
+     * Searches for the best action for the current player within the time budget
+     * @param round round to search, it isn't changed
+     * @return packed action, see MoveGenerator
+     */
+    public int chooseAction(Round round) {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "mcts");
+                t.setDaemon(true);
+                return t;
+            });
+            engines = new GameEngine[threads];
+            origins = new GameEngine[threads];
+            for (int i = 0; i < threads; i++) {
+                engines[i] = new GameEngine();
+                origins[i] = new GameEngine();
+            }
+        }
+        ByteBuffer position = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.save(round, position);
+        position.flip();
+
+        long start = System.nanoTime();
+        long deadline = start + budgetMillis * 1000000L;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Future<Node>[] trees = new Future[threads];
+        for (int i = 0; i < threads; i++) {
+            Search search = new Search(engines[i], origins[i], position.duplicate(), seeds.split(), deadline);
+            trees[i] = pool.submit(search::run);
+        }
+
+        // Merge the root statistics of every tree
+        int[] visits = new int[1 << 10];
+        int bestAction = MoveGenerator.encode(MoveGenerator.PASS, 0, 0);
+        long playouts = 0;
+        for (Future<Node> tree : trees) {
+            Node root;
+            try {
+                root = tree.get();
+            } catch (Exception e) {
+                throw new IllegalStateException("MCTS search failed", e);
+            }
+            playouts += root.visits;
+            for (int i = 0; i < root.numChildren; i++) {
+                visits[root.children[i].action] += root.children[i].visits;
+            }
+        }
+        for (int action = 0; action < visits.length; action++) {
+            if (visits[action] > visits[bestAction]) bestAction = action;
+        }
+
+        lastPlayouts = playouts;
+        lastNanos = System.nanoTime() - start;
+        return bestAction;
+    }
+
+    /**
+     * Grows one tree on one thread until the deadline
+     */
+    private static class Search {
+        private final GameEngine engine;
+        private final GameEngine origin;
+        private final ByteBuffer snapshot;
+        private final SplittableRandom random;
+        private final long deadline;
+        private final int[] buffer = new int[MoveGenerator.MAX_ACTIONS];
+        private Round position;
+
+        Search(GameEngine engine, GameEngine origin, ByteBuffer snapshot, SplittableRandom random, long deadline) {
+            this.engine = engine;
+            this.origin = origin;
+            this.snapshot = snapshot;
+            this.random = random;
+            this.deadline = deadline;
+        }
+
+        Node run() throws IOException {
+            Snapshot.load(origin.getRound(), snapshot);
+            position = origin.getRound();
+            engine.load(position);
+            Node root = new Node(null, 0, null, untried());
+            do {
+                iterate(root);
+            } while (System.nanoTime() < deadline);
+            return root;
+        }
+
+        private void iterate(Node root) {
+            engine.load(position);
+            Node node = root;
+
+            // Selection
+            while (node.numUntried == 0 && node.numChildren > 0) {
+                node = node.bestChild();
+                engine.apply(node.action);
+            }
+
+            // Expansion
+            if (node.numUntried > 0 && !engine.isGameOver()) {
+                int i = random.nextInt(node.numUntried);
+                int action = node.untried[i];
+                node.untried[i] = node.untried[--node.numUntried];
+                Player.ColorIdentity mover = engine.getCurrentPlayer().token;
+                engine.apply(action);
+                node = node.addChild(action, mover, untried());
+            }
+
+            // Playout
+            Player winner = engine.playRandomly(random, PLAYOUT_TURNS);
+
+            // Back propagation
+            for (; node != null; node = node.parent) {
+                node.visits++;
+                if (winner == null) node.wins += 0.5;
+                else if (winner.token == node.mover) node.wins += 1;
+            }
+        }
+
+        /**
+         * @return the actions that can be tried from the engine's position
+         */
+        private int[] untried() {
+            int n = engine.legalActions(buffer);
+            int[] actions = new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                // Rotating by 0 does nothing but use up the piece, the same as leaving it alone
+                if (MoveGenerator.type(buffer[i]) == MoveGenerator.ROTATE && MoveGenerator.arg(buffer[i]) == 0) continue;
+                actions[count++] = buffer[i];
+            }
+            return actions.length == count ? actions : Arrays.copyOf(actions, count);
+        }
+    }
+
+    /**
+     * A position in the tree, reached by playing action from the parent.
+     * Wins are counted from the point of view of the player who played it.
+     */
+    private static class Node {
+        private final Node parent;
+        private final int action;
+        private final Player.ColorIdentity mover;
+
+        private final int[] untried;
+        private int numUntried;
+        private Node[] children;
+        private int numChildren;
+
+        private int visits;
+        private double wins;
+
+        Node(Node parent, int action, Player.ColorIdentity mover, int[] untried) {
+            this.parent = parent;
+            this.action = action;
+            this.mover = mover;
+            this.untried = untried;
+            this.numUntried = untried.length;
+            this.children = new Node[untried.length];
+        }
+
+        Node addChild(int action, Player.ColorIdentity mover, int[] untried) {
+            Node child = new Node(this, action, mover, untried);
+            children[numChildren++] = child;
+            return child;
+        }
+
+        /**
+         * @return the child with the best UCT score
+         */
+        Node bestChild() {
+            Node best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(visits);
+            for (int i = 0; i < numChildren; i++) {
+                Node c = children[i];
+                double score = c.wins / c.visits + EXPLORATION * Math.sqrt(logVisits / c.visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+    }
+
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    public long getPlayoutsPerSecond() {
+        return lastNanos == 0 ? 0 : lastPlayouts * 1000000000L / lastNanos;
+    }
+}
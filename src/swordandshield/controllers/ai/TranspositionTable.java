@@ -0,0 +1,199 @@
+package swordandshield.controllers.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size table of search results by position, see Round.getZobristKey(),
+ * that any number of search threads can share without locking.
+ *
+ * Everything is kept in one long[]. The table is split into buckets of two
+ * entries, and a position can only go in the bucket picked by the low bits
+ * of its key. The first entry keeps the deepest search of the bucket and the
+ * second always takes the newest result that didn't beat it. Each entry is
+ * two longs, the key XOR the data then the data. Threads read and write them
+ * without any synchronisation, so a reader can see half of one store and
+ * half of another. It then finds the XOR of the two doesn't give back the
+ * key it is looking for and treats the entry as a miss, which is the
+ * "lockless hashing" trick of chess engines.
+ *
+ * Data of an entry, packed into a long:
+ *  bits 32-63  score, from the point of view of the player to move
+ *  bits 16-31  best action, see MoveGenerator
+ *  bits  8-15  depth searched
+ *  bits  2-7   generation, see newSearch()
+ *  bits  0-1   bound: EXACT, LOWER or UPPER, never 0 so no data is 0
+ */
+public final class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    // Longs per entry and per bucket
+    private static final int ENTRY = 2;
+    private static final int BUCKET = 2 * ENTRY;
+    private static final int BYTES_PER_BUCKET = BUCKET * Long.BYTES;
+
+    private static final int GENERATIONS = 64;
+
+    private final long[] table;
+    private final int bucketMask;
+
+    // Changed by newSearch(), entries of older searches are replaced first
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * @param megabytes most memory the table may use, it is rounded down to
+     *                  a power of two number of buckets
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) throw new IllegalArgumentException("Transposition table needs at least 1MB");
+        long buckets = Long.highestOneBit(megabytes * (1L << 20) / BYTES_PER_BUCKET);
+        if (buckets * BUCKET > Integer.MAX_VALUE - 8) buckets = (Integer.MAX_VALUE / BUCKET + 1) / 2;
+        table = new long[(int) (buckets * BUCKET)];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Looks up a position
+     * @param key Zobrist key of the position
+     * @return data of its entry, unpack it with score(), action() etc.
+     *         0 if the position isn't in the table
+     */
+    public long probe(long key) {
+        probes.increment();
+        int bucket = bucketOf(key);
+        boolean occupied = false;
+        for (int i = bucket; i < bucket + BUCKET; i += ENTRY) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != 0) {
+                hits.increment();
+                return data;
+            }
+            occupied |= data != 0;
+        }
+        if (occupied) collisions.increment();
+        return 0;
+    }
+
+    /**
+     * Saves the result of searching a position. It goes in the first entry
+     * of the bucket if the position is already there, the search is at least
+     * as deep, or the entry is from an earlier search, otherwise in the second.
+     * @param key Zobrist key of the position
+     * @param action best action found, see MoveGenerator
+     * @param score score from the point of view of the player to move
+     * @param depth depth searched, 0 - 255
+     * @param bound EXACT, LOWER if the score is at least this or UPPER if it is at most this
+     */
+    public void store(long key, int action, int score, int depth, int bound) {
+        stores.increment();
+        int gen = generation;
+        long data = (long) score << 32 | (action & 0xFFFFL) << 16 | (depth & 0xFF) << 8 | gen << 2 | bound;
+        int bucket = bucketOf(key);
+
+        long first = table[bucket + 1];
+        int entry = bucket + ENTRY;
+        if (first == 0 || (table[bucket] ^ first) == key || depth(first) <= depth || generation(first) != gen) {
+            entry = bucket;
+        }
+        table[entry + 1] = data;
+        table[entry] = key ^ data;
+    }
+
+    /**
+     * Starts a new search, so entries left over from the old ones get replaced before newer ones
+     */
+    public void newSearch() {
+        generation = (generation + 1) % GENERATIONS;
+    }
+
+    /**
+     * Empties the table and its stats. Not safe while other threads are using it.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+        collisions.reset();
+        stores.reset();
+    }
+
+    private int bucketOf(long key) {
+        // The high bits of the key pick the bucket, the low bits are left for the XOR check
+        return ((int) (key >>> 32) & bucketMask) * BUCKET;
+    }
+
+    // Unpacking the data of an entry
+
+    public static int score(long data) {
+        return (int) (data >> 32);
+    }
+
+    public static int action(long data) {
+        return (int) (data >>> 16) & 0xFFFF;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 8) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) data & 3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 2) & (GENERATIONS - 1);
+    }
+
+    // Stats
+
+    /**
+     * @return fraction of probes that found their position
+     */
+    public double getHitRate() {
+        long n = probes.sum();
+        return n == 0 ? 0 : (double) hits.sum() / n;
+    }
+
+    /**
+     * @return fraction of probes that missed in a bucket holding other positions
+     */
+    public double getCollisionRate() {
+        long n = probes.sum();
+        return n == 0 ? 0 : (double) collisions.sum() / n;
+    }
+
+    /**
+     * Counts the entries in use, so it goes through the whole table
+     * @return fraction of entries holding a position
+     */
+    public double getFill() {
+        long used = 0;
+        for (int i = 1; i < table.length; i += ENTRY) {
+            if (table[i] != 0) used++;
+        }
+        return (double) used / (table.length / ENTRY);
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return number of entries the table can hold
+     */
+    public int capacity() {
+        return table.length / ENTRY;
+    }
+}
@@ -0,0 +1,208 @@
+package swordandshield.controllers.parsingController;
+
+import swordandshield.models.Piece;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits commands into tokens for the Parser. Input is read a line at a time
+ * through one buffer that lives as long as the lexer, and tokens are worked
+ * out by looking at their characters directly (no regex, no Strings), so
+ * lexing a command doesn't allocate anything.
+ *
+ * Every word of the grammar is case insensitive.
+ */
+public class Lexer {
+
+    // Token kinds returned by next()
+    public static final int END = 0;
+    public static final int UNKNOWN = 1;
+    public static final int CREATE = 2;
+    public static final int MOVE = 3;
+    public static final int ROTATE = 4;
+    public static final int PASS = 5;
+    public static final int UNDO = 6;
+    public static final int HELP = 7;
+    public static final int LETTER = 8;
+    public static final int DIRECTION = 9;
+    public static final int ROTATION = 10;
+    public static final int SAVE = 11;
+    public static final int LOAD = 12;
+
+    private final Reader in;
+    private boolean finished;
+
+    // Characters read from in but not lexed yet
+    private final char[] buffer = new char[8192];
+    private int bufferPos;
+    private int bufferEnd;
+
+    // The current line and where the lexer is up to in it
+    private char[] line = new char[128];
+    private int length;
+    private int pos;
+
+    // Start and end of the last token
+    private int start;
+    private int end;
+
+    // Value of the last LETTER, DIRECTION or ROTATION token
+    private char letter;
+    private Piece.Direction direction;
+    private int degrees;
+
+    public Lexer(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line of input, ready to be split into tokens
+     * @return false if there are no more lines
+     * @throws IOException if reading the input fails
+     */
+    public boolean nextLine() throws IOException {
+        length = 0;
+        pos = 0;
+        boolean readAnything = false;
+        while (true) {
+            if (bufferPos == bufferEnd) {
+                int read = in.read(buffer, 0, buffer.length);
+                if (read <= 0) {
+                    finished = !readAnything;
+                    return readAnything;
+                }
+                bufferPos = 0;
+                bufferEnd = read;
+            }
+            readAnything = true;
+            char c = buffer[bufferPos++];
+            if (c == '\n') break;
+            if (c == '\r') continue;
+            if (length == line.length) {
+                char[] bigger = new char[line.length * 2];
+                System.arraycopy(line, 0, bigger, 0, length);
+                line = bigger;
+            }
+            line[length++] = c;
+        }
+        return true;
+    }
+
+    /**
+     * @return true once nextLine() has found there are no more lines
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Moves on to the next token of the current line
+     * @return the kind of token, END once the line has run out
+     */
+    public int next() {
+        while (pos < length && Character.isWhitespace(line[pos])) pos++;
+        if (pos == length) return END;
+        start = pos;
+        while (pos < length && !Character.isWhitespace(line[pos])) pos++;
+        end = pos;
+        return classify();
+    }
+
+    private int classify() {
+        char c = lower(line[start]);
+        switch (end - start) {
+            case 1:
+                if (c >= 'a' && c <= 'x') {
+                    letter = (char) (c - 'a' + 'A');
+                    return LETTER;
+                }
+                if (c == '0') return rotation(0);
+                return UNKNOWN;
+            case 2:
+                if (is("up")) return direction(Piece.Direction.NORTH);
+                if (is("90")) return rotation(90);
+                return UNKNOWN;
+            case 3:
+                if (is("180")) return rotation(180);
+                if (is("270")) return rotation(270);
+                return UNKNOWN;
+            case 4:
+                switch (c) {
+                    case 'm': return is("move") ? MOVE : UNKNOWN;
+                    case 'p': return is("pass") ? PASS : UNKNOWN;
+                    case 'u': return is("undo") ? UNDO : UNKNOWN;
+                    case 'h': return is("help") ? HELP : UNKNOWN;
+                    case 's': return is("save") ? SAVE : UNKNOWN;
+                    case 'd': return is("down") ? direction(Piece.Direction.SOUTH) : UNKNOWN;
+                    case 'l':
+                        if (is("left")) return direction(Piece.Direction.WEST);
+                        return is("load") ? LOAD : UNKNOWN;
+                    default: return UNKNOWN;
+                }
+            case 5:
+                return is("right") ? direction(Piece.Direction.EAST) : UNKNOWN;
+            case 6:
+                switch (c) {
+                    case 'c': return is("create") ? CREATE : UNKNOWN;
+                    case 'r': return is("rotate") ? ROTATE : UNKNOWN;
+                    default: return UNKNOWN;
+                }
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * @param word lower case word the same length as the current token
+     * @return whether the current token is the word, ignoring case
+     */
+    private boolean is(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (lower(line[start + i]) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private int direction(Piece.Direction d) {
+        direction = d;
+        return DIRECTION;
+    }
+
+    private int rotation(int d) {
+        degrees = d;
+        return ROTATION;
+    }
+
+    /**
+     * @return upper case A-X letter of the last LETTER token
+     */
+    public char letter() {
+        return letter;
+    }
+
+    /**
+     * @return the last token exactly as it was typed, e.g. a file name
+     */
+    public String text() {
+        return new String(line, start, end - start);
+    }
+
+    /**
+     * @return direction of the last DIRECTION token
+     */
+    public Piece.Direction direction() {
+        return direction;
+    }
+
+    /**
+     * @return 0, 90, 180 or 270 from the last ROTATION token
+     */
+    public int degrees() {
+        return degrees;
+    }
+}
@@ -1,223 +1,257 @@
 package swordandshield.controllers.parsingController;
 
+import swordandshield.models.MoveGenerator;
 import swordandshield.models.Round;
 import swordandshield.controllers.parsingController.nodes.*;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Serializable;
-import java.util.List;
-import java.util.Scanner;
 import java.util.regex.Pattern;
 
 import static java.util.regex.Pattern.CASE_INSENSITIVE;
 
 /**
  * Recursive descent parser that returns a ParseNode to the input controller
- * which is then executed. Uses a fixed grammar.
+ * which is then executed. Uses a fixed grammar. Tokens come from a Lexer over
+ * the same reader for the whole game.
  */
 public class Parser implements Serializable {
 
-    private static Pattern letter = Pattern.compile("[A-Xa-x]", CASE_INSENSITIVE);
-    private static Pattern rotation = Pattern.compile("0|90|180|270", CASE_INSENSITIVE);
-    private static Pattern direction = Pattern.compile("up|down|left|right", CASE_INSENSITIVE);
+    // Identify the actions a player is allowed to take, see UserIOView.playerChoices()
+    public static final Pattern move = Pattern.compile("move", CASE_INSENSITIVE);
+    public static final Pattern create = Pattern.compile("create", CASE_INSENSITIVE);
+    public static final Pattern rotate = Pattern.compile("rotate", CASE_INSENSITIVE);
+    public static final Pattern pass = Pattern.compile("pass", CASE_INSENSITIVE);
+    public static final Pattern undo = Pattern.compile("undo", CASE_INSENSITIVE);
 
-    public static Pattern move = Pattern.compile("move", CASE_INSENSITIVE);
-    public static Pattern create = Pattern.compile("create", CASE_INSENSITIVE);
-    public static Pattern rotate = Pattern.compile("rotate", CASE_INSENSITIVE);
-    public static Pattern pass = Pattern.compile("pass", CASE_INSENSITIVE);
-    public static Pattern undo = Pattern.compile("undo", CASE_INSENSITIVE);
-    private static Pattern help = Pattern.compile("help", CASE_INSENSITIVE);
+    // Piece names by letter so parsing doesn't make a new String for each
+    private static final String[] PIECE_NAMES = new String[24];
+    static {
+        for (int i = 0; i < PIECE_NAMES.length; i++) {
+            PIECE_NAMES[i] = String.valueOf((char) ('A' + i));
+        }
+    }
+
+    private transient Reader in;
+    private transient Lexer lexer;
+
+    /**
+     * Parser that reads commands typed into the console
+     */
+    public Parser() {
+        this(null);
+    }
+
+    /**
+     * @param in where to read commands from, null for the console
+     */
+    public Parser(Reader in) {
+        this.in = in;
+    }
 
     /**
      * Gets user input and sends this correct input to the controller.
-     * Checks user input against regex patterns and allowed actions on
+     * Checks user input against the grammar and allowed actions on
      * every move depending on the state of the round.
      * @param round
      * @return Returns a _ParseNode to the input controller
      */
     @SuppressWarnings("JavaDoc")
     public _ParseNode getInput(Round round) {
-        Scanner buf = new Scanner(System.in);
         round.userIOView.outputCurrPlayerText(round.currPlayer);
-        List<Pattern> allowedChoices = round.userIOView.outputPlayerChoices(round);
-        return parseTurn(allowedChoices, buf);
+        round.userIOView.outputPlayerChoices(round);
+        return parseTurn(round.allowedActions(), getLexer());
+    }
+
+    /**
+     * Parses the next command without displaying any prompts,
+     * e.g. when the commands come from a script
+     * @param round round the command is for
+     * @return the command, null if it was wrong or there is no more input
+     */
+    public _ParseNode parseCommand(Round round) {
+        return parseTurn(round.allowedActions(), getLexer());
+    }
+
+    /**
+     * @return true once every line of input has been read
+     */
+    public boolean isFinished() {
+        return lexer != null && lexer.isFinished();
+    }
+
+    Lexer getLexer() {
+        if (lexer == null) lexer = new Lexer(in != null ? in : new InputStreamReader(System.in));
+        return lexer;
     }
 
     /**
-     * checks if user input matches any of the predefined grammar patterns.
+     * checks if user input matches any of the commands of the grammar.
      * It uses this to determine which command wants to be returned and
      * eventually executed.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
-     * @param buf
-     * @return returns ParseNode recursively back to getInput()
+     * @param allowed bit for each type of action that can be executed based on
+     *                the current status of the round, see Round.allowedActions()
+     * @param lexer
+     * @return returns ParseNode recursively back to getInput(), null if the
+     *         command was wrong or there is no more input
      */
     @SuppressWarnings("JavaDoc")
-    private _ParseNode parseTurn(List<Pattern> allowedChoices, Scanner buf) {
-        while (buf.hasNextLine()) {
-            int count = 0;
-            String[] line = buf.nextLine().split("\\s");
-            if (matches(create, line[count])) return parseCreateNode(allowedChoices, line, ++count);
-            else if (matches(move, line[count])) return parseMoveNode(allowedChoices, line, ++count);
-            else if (matches(rotate, line[count])) return parseRotateNode(allowedChoices, line, ++count);
-            else if (matches(pass, line[count])) return parsePassNode(allowedChoices);
-            else if (matches(undo, line[count])) return parseUndoNode(allowedChoices);
-            else if (matches(help, line[count])) return new HelpNode();
-            else {
-                System.out.println("Unknown Command. Please try again");
+    _ParseNode parseTurn(int allowed, Lexer lexer) {
+        try {
+            while (lexer.nextLine()) {
+                switch (lexer.next()) {
+                    case Lexer.CREATE: return parseCreateNode(allowed, lexer);
+                    case Lexer.MOVE: return parseMoveNode(allowed, lexer);
+                    case Lexer.ROTATE: return parseRotateNode(allowed, lexer);
+                    case Lexer.PASS: return parsePassNode(allowed);
+                    case Lexer.UNDO: return parseUndoNode(allowed);
+                    case Lexer.HELP: return new HelpNode();
+                    case Lexer.SAVE: return parseSaveNode(lexer);
+                    case Lexer.LOAD: return parseLoadNode(lexer);
+                    default:
+                        System.out.println("Unknown Command. Please try again");
+                }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
         return null;
     }
 
     /**
      * Grammar for terminal for 'create' user input.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
-     * @param line The user input string, split into an array of Strings
-     * @param count the index of the line String[] we want to look at
+     * @param allowed bit for each type of action that can be executed
+     *                based on the current status of the round
+     * @param lexer positioned just after the 'create'
      * @return returns CreateNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private CreateNode parseCreateNode(List<Pattern> allowedChoices, String[] line, int count) {
-        if (!requireAction(allowedChoices, create)) return null;
+    private CreateNode parseCreateNode(int allowed, Lexer lexer) {
+        if (!requireAction(allowed, MoveGenerator.CREATE)) return null;
 
-        String pieceName = require(letter, "Correct piece letter not found. Please try again", line, count);
-        if (pieceName.equalsIgnoreCase("")) return null;
+        if (!require(lexer, Lexer.LETTER, "Correct piece letter not found. Please try again")) return null;
+        String pieceName = PIECE_NAMES[lexer.letter() - 'A'];
 
-        int rot = requireInt(rotation, line, ++count);
-        if (rot == -1) return null;
+        if (!require(lexer, Lexer.ROTATION, "Valid number for rotation not entered. Please try again")) return null;
 
-        return new CreateNode(pieceName, rot);
+        return new CreateNode(pieceName, lexer.degrees());
     }
 
     /**
      * Grammar for terminal for 'move' user input.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
-     * @param line The user input string, split into an array of Strings
-     * @param count the index of the line String[] we want to look at
+     * @param allowed bit for each type of action that can be executed
+     *                based on the current status of the round
+     * @param lexer positioned just after the 'move'
      * @return returns MoveNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private MoveNode parseMoveNode(List<Pattern> allowedChoices, String[] line, int count) {
-        if (!requireAction(allowedChoices, move)) return null;
+    private MoveNode parseMoveNode(int allowed, Lexer lexer) {
+        if (!requireAction(allowed, MoveGenerator.MOVE)) return null;
 
-        String pieceName = require(letter, "Correct piece letter not found. Please try again", line, count);
-        if (pieceName.equalsIgnoreCase("")) return null;
+        if (!require(lexer, Lexer.LETTER, "Correct piece letter not found. Please try again")) return null;
+        String pieceName = PIECE_NAMES[lexer.letter() - 'A'];
 
-        String dir = require(direction, "Correct direction not specified. Please try again", line, ++count);
-        if (dir.equalsIgnoreCase("")) return null;
+        if (!require(lexer, Lexer.DIRECTION, "Correct direction not specified. Please try again")) return null;
 
-        return new MoveNode(pieceName, dir);
+        return new MoveNode(pieceName, lexer.direction());
     }
 
     /**
      * Grammar for terminal for 'rotate' user input.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
-     * @param line The user input string, split into an array of Strings
-     * @param count the index of the line String[] we want to look at
+     * @param allowed bit for each type of action that can be executed
+     *                based on the current status of the round
+     * @param lexer positioned just after the 'rotate'
      * @return returns RotateNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private RotateNode parseRotateNode(List<Pattern> allowedChoices, String[] line, int count) {
-        if (!requireAction(allowedChoices, rotate)) return null;
+    private RotateNode parseRotateNode(int allowed, Lexer lexer) {
+        if (!requireAction(allowed, MoveGenerator.ROTATE)) return null;
 
-        String pieceName = require(letter, "Correct piece letter not found. Please try again", line, count);
-        if (pieceName.equalsIgnoreCase("")) return null;
+        if (!require(lexer, Lexer.LETTER, "Correct piece letter not found. Please try again")) return null;
+        String pieceName = PIECE_NAMES[lexer.letter() - 'A'];
 
-        int rot = requireInt(rotation, line, ++count);
-        if (rot == -1) return null;
+        if (!require(lexer, Lexer.ROTATION, "Valid number for rotation not entered. Please try again")) return null;
 
-        return new RotateNode(pieceName, rot);
+        return new RotateNode(pieceName, lexer.degrees());
     }
 
     /**
      * Grammar for terminal for 'undo' user input.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
+     * @param allowed bit for each type of action that can be executed
+     *                based on the current status of the round
      * @return returns UndoNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private UndoNode parseUndoNode(List<Pattern> allowedChoices) {
-        if (!requireAction(allowedChoices, undo)) return null;
+    private UndoNode parseUndoNode(int allowed) {
+        if (!requireAction(allowed, MoveGenerator.UNDO)) return null;
 
         return new UndoNode();
     }
 
     /**
      * Grammar for terminal for 'pass' user input.
-     * @param allowedChoices List of actions that can be executed
-     *                       based on the current status of the round
+     * @param allowed bit for each type of action that can be executed
+     *                based on the current status of the round
      * @return returns PassNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private PassNode parsePassNode(List<Pattern> allowedChoices) {
-        if (!requireAction(allowedChoices, pass)) return null;
+    private PassNode parsePassNode(int allowed) {
+        if (!requireAction(allowed, MoveGenerator.PASS)) return null;
         return new PassNode();
     }
 
+    /**
+     * Grammar for terminal for 'save' user input. Saving is allowed at any time.
+     * @param lexer positioned just after the 'save'
+     * @return returns SaveNode (which is by subtyping a ParseNode) recursively back to getInput()
+     */
+    private SaveNode parseSaveNode(Lexer lexer) {
+        if (lexer.next() == Lexer.END) {
+            System.out.println("File name not given. Please try again");
+            return null;
+        }
+        return new SaveNode(lexer.text());
+    }
 
-    // Helper Methods
     /**
-     * Returns a string that matches the String pattern, if it does match.
-     * If it doesn't match, empty string is returned.
-     *
-     * @param pattern The pattern we want to match against
-     * @param message error message to display if it goes wrong and doesn't match
-     * @param line The user input string, split into an array of Strings
-     * @param count the index of the line String[] we want to look at
-     * @return empty string if it didn't match. Otherwise it returns the string entered by user
+     * Grammar for terminal for 'load' user input. Loading is allowed at any time.
+     * @param lexer positioned just after the 'load'
+     * @return returns LoadNode (which is by subtyping a ParseNode) recursively back to getInput()
      */
-    private String require(Pattern pattern, String message, String[] line, int count) {
-        if (count < line.length) {
-            if (line[count].matches(pattern.pattern())) {
-                return line[count];
-            }
+    private LoadNode parseLoadNode(Lexer lexer) {
+        if (lexer.next() == Lexer.END) {
+            System.out.println("File name not given. Please try again");
+            return null;
         }
-        System.out.println(message);
-        return "";
+        return new LoadNode(lexer.text());
     }
 
+
+    // Helper Methods
     /**
-     * Returns an int that matches an int pattern, if it does match.
-     * If it doesn't match, -1 is returned.
+     * Checks the next token is of the kind the grammar needs next
      *
-     * @param pattern The pattern we want to match against
-     * @param line The user input string, split into an array of Strings
-     * @param count the index of the line String[] we want to look at
-     * @return the int entered (if it matched the pattern), otherwise -1
+     * @param lexer lexer to take the token from
+     * @param kind kind of token needed, see Lexer
+     * @param message error message to display if it goes wrong and doesn't match
+     * @return false if the token is missing or a different kind
      */
-    private int requireInt(Pattern pattern, String[] line, int count) {
-        if (count < line.length) {
-            if (line[count].matches(pattern.pattern())) {
-                return Integer.parseInt(line[count]);
-            }
-        }
-        System.out.println("Valid number for rotation not entered. Please try again");
-        return -1;
+    private boolean require(Lexer lexer, int kind, String message) {
+        if (lexer.next() == kind) return true;
+        System.out.println(message);
+        return false;
     }
 
     /**
      * Checks if the action the user wants to execute is possible.
      * I.E they typed create to create a piece but if they can't
      * create a piece at this piece, it returns false
-     * @param actions List of actions allowed on this turn in the round
-     * @param pat pattern the user wants to execute.
-     * @return boolean. Returns false if the pattern is not in the List
+     * @param actions bit for each type of action allowed on this turn in the round
+     * @param type type of action the user wants to execute, see MoveGenerator
+     * @return boolean. Returns false if the action is not allowed
      */
-    private boolean requireAction(List<Pattern> actions, Pattern pat) {
-        if (!actions.contains(pat)) {
+    private boolean requireAction(int actions, int type) {
+        if ((actions & (1 << type)) == 0) {
             System.out.println("Cannot do this action. Please try again");
             return false;
         }
         return true;
     }
-
-    /**
-     * Returns a boolean if a pattern matches a string based upon that string.
-     * The pattern should have the CASE_INSENSITIVE flag enabled. This method
-     * is completely CASE_INSENSITIVE.
-     * @param pattern to match
-     * @param s to match
-     * @return boolean if they match or not
-     */
-    private boolean matches(Pattern pattern, String s) {
-        return (pattern.toString().equalsIgnoreCase(s));
-    }
-}
\ No newline at end of file
+}
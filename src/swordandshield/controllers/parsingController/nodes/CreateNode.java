@@ -23,18 +23,11 @@ public class CreateNode implements _ParseNode, Serializable {
     @SuppressWarnings("JavaDoc")
     @Override
     public void execute(Round round) {
-        round.prevMoves.push(round.deepClone());
         Piece p = round.currPlayer.getAvailablePieceByName(name);
         if (p == null) return;
 
-        if (round.board.isPieceAtPos(round.currPlayer.spawnPoint)) {
+        if (!round.createPiece(p, numRots)) {
             System.out.println("Piece already on spawn point. Cannot create here");
         }
-        else {
-            p.addToPlayersBoardPieces(round.currPlayer.spawnPoint);
-            p.rotatePieceCW(numRots);
-            round.board.putPieceOnGrid(p);
-            round.currPlayer.pieceCreated = true;
-        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package swordandshield.controllers.parsingController.nodes;
+
+import swordandshield.models.Round;
+import swordandshield.models.Snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+public class LoadNode implements _ParseNode, Serializable {
+
+    private final String fileName;
+
+    public LoadNode(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Replaces the game with the one saved in the file, see Snapshot.
+     * The game is left as it was if the file can't be loaded.
+     * @param round
+     */
+    @SuppressWarnings("JavaDoc")
+    @Override
+    public void execute(Round round) {
+        try {
+            Snapshot.load(round, new File(fileName));
+            System.out.println("Game loaded from " + fileName);
+        } catch (IOException e) {
+            System.out.println("Couldn't load the game: " + e.getMessage());
+        }
+    }
+}
@@ -8,9 +8,9 @@ import java.io.Serializable;
 public class MoveNode implements _ParseNode, Serializable {
 
     private String pieceName;
-    private String dir;
+    private Piece.Direction dir;
 
-    public MoveNode(String pieceName, String dir) {
+    public MoveNode(String pieceName, Piece.Direction dir) {
         this.pieceName = pieceName;
         this.dir = dir;
     }
@@ -23,15 +23,10 @@ public class MoveNode implements _ParseNode, Serializable {
     @SuppressWarnings("JavaDoc")
     @Override
     public void execute(Round round) {
-        round.prevMoves.push(round.deepClone());
         Piece p = round.currPlayer.getBoardPieceByName(pieceName);
         if (p == null) return;
-        int adjacentLength = p.detAdjacentPieceLength(round, p.getPos(), dir, 0);
-        if (p.beenAlteredThisTurn()) {
+        if (!round.movePiece(p, dir)) {
             System.out.println("This piece has already been moved/rotated this turn");
-            return;
         }
-        round.board.round.moveAdjacentPieces(adjacentLength, p.getPos(), dir, round.board);
-        p.setAlteredThisTurn(true);
     }
 }
\ No newline at end of file
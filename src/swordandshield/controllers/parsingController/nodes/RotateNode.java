@@ -23,11 +23,11 @@ public class RotateNode implements _ParseNode, Serializable {
     @SuppressWarnings("JavaDoc")
     @Override
     public void execute(Round round) {
-        round.prevMoves.push(round.deepClone());
         Piece p = round.currPlayer.getBoardPieceByName(pieceName);
         if (p == null) return;
-        p.rotatePieceCW(numRots);
-        p.setAlteredThisTurn(true);
+        if (!round.rotatePiece(p, numRots)) {
+            System.out.println("You do not have any moves left in your turn");
+        }
     }
 
     /**
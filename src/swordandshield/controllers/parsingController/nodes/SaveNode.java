@@ -0,0 +1,32 @@
+package swordandshield.controllers.parsingController.nodes;
+
+import swordandshield.models.Round;
+import swordandshield.models.Snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+public class SaveNode implements _ParseNode, Serializable {
+
+    private final String fileName;
+
+    public SaveNode(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Saves the game as it is to the file, see Snapshot
+     * @param round
+     */
+    @SuppressWarnings("JavaDoc")
+    @Override
+    public void execute(Round round) {
+        try {
+            Snapshot.save(round, new File(fileName));
+            System.out.println("Game saved to " + fileName);
+        } catch (IOException e) {
+            System.out.println("Couldn't save the game: " + e.getMessage());
+        }
+    }
+}
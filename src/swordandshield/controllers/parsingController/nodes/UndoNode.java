@@ -7,8 +7,8 @@ import java.io.Serializable;
 public class UndoNode implements _ParseNode, Serializable {
 
     /**
-     * Execute will execute the relevant game methods
-     * for the types of nodes, create node will create a node, etc
+     * Reverts the last command executed this turn using the
+     * undo record that command left on the round
      * @param round
      */
     @SuppressWarnings("JavaDoc")
@@ -22,8 +22,7 @@ public class UndoNode implements _ParseNode, Serializable {
             System.out.println("Can't undo. Nothing left to undo.");
         }
         else {
-            Round r = round.prevMoves.pop();
-            round.setCloneFields(r);
+            round.undo();
         }
     }
 }
\ No newline at end of file
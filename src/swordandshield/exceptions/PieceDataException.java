@@ -0,0 +1,16 @@
+package swordandshield.exceptions;
+
+/**
+ * Exception for when the piece data a game is set up from can't be read
+ * or isn't in the right format. A game can't be played without it.
+ */
+public class PieceDataException extends RuntimeException {
+
+    public PieceDataException(String message) {
+        super(message);
+    }
+
+    public PieceDataException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
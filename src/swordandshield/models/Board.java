@@ -1,17 +1,342 @@
 package swordandshield.models;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
-
+/**
+ * The 10 x 10 game board. Rather than a grid of Pieces, occupancy is kept as
+ * bitboards: cell y * 10 + x is one bit spread over a pair of longs (cells
+ * 0-63 in the low long, 64-99 in the high long). A second pair holds the same
+ * bits in column order (x * 10 + y) so vertical lines can be read as cheaply as
+ * horizontal ones. The piece in an occupied cell is found through its id.
+ *
+ * The board also resolves reactions. It keeps a mask per side of the cells
+ * whose piece has a sword on that side, and a mask of the cells a piece has
+ * been put in or turned in since it last looked. After an action only those
+ * cells are checked for new contacts, see resolveReactions().
+ *
+ * Putting a piece in a cell or taking it out also updates the board's part
+ * of the Zobrist key of the game, see Zobrist.
+ */
 public class Board implements Serializable {
 
-    Piece[][] grid = new Piece[10][10];
+    static final int SIZE = 10;
+    static final int NUM_CELLS = SIZE * SIZE;
+
+    // Cells a piece can occupy. The 3 cells in two of the corners and the two faces are masked out
+    private static final long PLAYABLE_LO;
+    private static final long PLAYABLE_HI;
+
+    // For each cell, the bits of the (up to 4) cells directly next to it
+    private static final long[] NEIGHBOURS_LO = new long[NUM_CELLS];
+    private static final long[] NEIGHBOURS_HI = new long[NUM_CELLS];
+
+    // Rays: NEXT_CELL[dir][cell] is the next cell along from cell in a Piece.Direction, OFF_GRID past the edge
+    private static final int OFF_GRID = -1;
+    private static final int[][] NEXT_CELL = new int[4][NUM_CELLS];
+
+    // One shared (immutable) Coord per cell so moving a piece doesn't allocate
+    private static final Coord[] COORDS = new Coord[NUM_CELLS];
+
+    // Cell kinds, the low 3 bits of each entry of cells
+    private static final int OUT = 0;
+    private static final int NORMAL = 1;
+    private static final int SPAWN = 2;
+    private static final int FACE = 3;
+    private static final int NEXT_TO_FACE = 4;
+    private static final int KIND_MASK = 7;
+    // Then the index of the player the spawn/face belongs to, and the direction a cell next to a face faces it in
+    private static final int OWNER_SHIFT = 3;
+    private static final int FACING_SHIFT = 4;
+    private static final Piece.Direction[] DIRECTIONS = Piece.Direction.values();
+
+    private static final int SWORD = Piece.Abilities.SWORD.ordinal();
+    private static final int SHIELD = Piece.Abilities.SHIELD.ordinal();
+
+    // Kinds of reaction, see reactionAt()
+    private static final int NO_REACTION = 0;
+    private static final int SWORD_SWORD = 1;
+    private static final int SWORD_SHIELD = 2;
+
+    // SWORD_SIDES[layoutCode] has bit side set for each side of the layout with a sword
+    private static final byte[] SWORD_SIDES = new byte[256];
+
+    static {
+        long lo = 0, hi = 0;
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            int x = cell % SIZE, y = cell / SIZE;
+            if (isCornerCell(x, y) || isFaceCell(x, y)) continue;
+            if (cell < 64) lo |= 1L << cell;
+            else hi |= 1L << (cell - 64);
+        }
+        PLAYABLE_LO = lo;
+        PLAYABLE_HI = hi;
+
+        int[][] offsets = {{0, -1}, {1, 0}, {0, 1}, {-1, 0}};
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            int x = cell % SIZE, y = cell / SIZE;
+            for (int[] o : offsets) {
+                int nx = x + o[0], ny = y + o[1];
+                if (nx < 0 || ny < 0 || nx >= SIZE || ny >= SIZE) continue;
+                int n = ny * SIZE + nx;
+                if (n < 64) NEIGHBOURS_LO[cell] |= 1L << n;
+                else NEIGHBOURS_HI[cell] |= 1L << (n - 64);
+            }
+        }
+
+        for (Piece.Direction d : Piece.Direction.values()) {
+            for (int cell = 0; cell < NUM_CELLS; cell++) {
+                int nx = cell % SIZE + d.dx, ny = cell / SIZE + d.dy;
+                boolean inGrid = nx >= 0 && ny >= 0 && nx < SIZE && ny < SIZE;
+                NEXT_CELL[d.ordinal()][cell] = inGrid ? ny * SIZE + nx : OFF_GRID;
+            }
+        }
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            COORDS[cell] = new Coord(cell % SIZE, cell / SIZE);
+        }
+        for (int code = 0; code < SWORD_SIDES.length; code++) {
+            for (int side = 0; side < 4; side++) {
+                if ((code >> (2 * side) & 3) == SWORD) SWORD_SIDES[code] |= 1 << side;
+            }
+        }
+    }
+
+    // Row order occupancy (y * 10 + x)
+    private long occupiedLo;
+    private long occupiedHi;
+    // Column order occupancy (x * 10 + y)
+    private long occupiedColLo;
+    private long occupiedColHi;
+
+    // Id of the piece in each cell (row order), 0 if empty
+    private final byte[] ids = new byte[NUM_CELLS];
+    private final Piece[] piecesById = new Piece[Piece.MAX_ID + 1];
+
+    // What every cell is, see setupCells()
+    private final byte[] cells = new byte[NUM_CELLS];
+
+    // Zobrist key of every piece on the board, and the key each cell added to it
+    private long zobristKey;
+    private final long[] cellKeys = new long[NUM_CELLS];
+
+    // Sword edges: swords[side * 2] and swords[side * 2 + 1] are the low and high
+    // bits of the cells holding a piece with a sword on that side
+    private final long[] swords = new long[8];
+    // Cells a piece has been put in or turned in since reactions were last looked for
+    private long changedLo;
+    private long changedHi;
+
+    // Pairs of pieces found reacting during the current action, id << 8 | otherId
+    private int[] reactions = new int[16];
+    private int reactionCount;
+    // pairStamps[pairIndex()] == stamp for pairs of pieces queued or resolved during the current action
+    private final int[] pairStamps = new int[(Piece.MAX_ID + 1) * (Piece.MAX_ID + 1)];
+    private int stamp;
+
     public Round round;
 
     public Board(Round round) {
         this.round = round;
     }
 
+    /**
+     * Works out what every cell of the board is, once the players are known:
+     * out of bounds (the corners), a player's spawn point or face, next to a
+     * face (and which way the face is), or a normal cell. Every check of a
+     * cell after that is a single read of the table.
+     * @param players players of the round, their index in the list is kept as the owner
+     */
+    void setupCells(List<Player> players) {
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            cells[cell] = (byte) (isCornerCell(cell % SIZE, cell / SIZE) ? OUT : NORMAL);
+        }
+        for (int i = 0; i < players.size(); i++) {
+            Player p = players.get(i);
+            cells[cellOf(p.spawnPoint)] = (byte) (SPAWN | i << OWNER_SHIFT);
+            int face = cellOf(p.homeFace);
+            cells[face] = (byte) (FACE | i << OWNER_SHIFT);
+            for (Piece.Direction d : DIRECTIONS) {
+                int next = NEXT_CELL[d.ordinal()][face];
+                if (next == OFF_GRID || (cells[next] & KIND_MASK) != NORMAL) continue;
+                cells[next] = (byte) (NEXT_TO_FACE | i << OWNER_SHIFT | d.opposite().ordinal() << FACING_SHIFT);
+            }
+        }
+    }
+
+    private static int cellOf(Coord pos) {
+        return pos.getY() * SIZE + pos.getX();
+    }
+
+    /**
+     * @return the kind of the cell at x, y, OUT if it's off the grid
+     */
+    private int kindAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= SIZE || y >= SIZE) return OUT;
+        return cells[y * SIZE + x] & KIND_MASK;
+    }
+
+    // Bit helpers
+
+    private static boolean testBit(long lo, long hi, int index) {
+        return index < 64 ? (lo & (1L << index)) != 0 : (hi & (1L << (index - 64))) != 0;
+    }
+
+    /**
+     * Reads the 10 bits of one line (a row in row order or a column in column order)
+     * out of a pair of masks
+     */
+    private static int lineBits(long lo, long hi, int line) {
+        int start = line * SIZE;
+        long bits;
+        if (start >= 64) bits = hi >>> (start - 64);
+        else if (start + SIZE > 64) bits = (lo >>> start) | (hi << (64 - start));
+        else bits = lo >>> start;
+        return (int) (bits & 0x3FF);
+    }
+
+    private static boolean isCornerCell(int x, int y) {
+        return (y == 0 && (x == 0 || x == 1)) ||
+                (y == 1 && (x == 0)) ||
+                (y == 9 && (x == 9 || x == 8)) ||
+                (y == 8) && (x == 9);
+    }
+
+    private static boolean isFaceCell(int x, int y) {
+        return (x == 1 && y == 1) || (x == 8 && y == 8);
+    }
+
+    private boolean isOccupied(int x, int y) {
+        return testBit(occupiedLo, occupiedHi, y * SIZE + x);
+    }
+
+    /**
+     * @param cell y * SIZE + x
+     * @return the shared, immutable Coord of the cell
+     */
+    static Coord coordOf(int cell) {
+        return COORDS[cell];
+    }
+
+    /**
+     * @param cell y * SIZE + x
+     * @return false for cells that can never hold a piece, i.e. corners and faces
+     */
+    static boolean isPlayable(int cell) {
+        return testBit(PLAYABLE_LO, PLAYABLE_HI, cell);
+    }
+
+    /**
+     * Empties every cell on the board
+     */
+    void clear() {
+        occupiedLo = occupiedHi = occupiedColLo = occupiedColHi = 0;
+        changedLo = changedHi = 0;
+        Arrays.fill(ids, (byte) 0);
+        Arrays.fill(swords, 0);
+        Arrays.fill(cellKeys, 0);
+        zobristKey = 0;
+    }
+
+    /**
+     * @return the board's part of the Zobrist key of the game, see Round.getZobristKey()
+     */
+    long getZobristKey() {
+        return zobristKey;
+    }
+
+    /**
+     * Worked out when asked for rather than kept up to date, as few callers need it
+     * @return the board's part of Round.getMirroredZobristKey()
+     */
+    long getMirroredZobristKey() {
+        long key = 0;
+        for (long bits = occupiedLo; bits != 0; bits &= bits - 1) {
+            int cell = Long.numberOfTrailingZeros(bits);
+            key ^= Zobrist.mirroredPiece(piecesById[ids[cell]], cell);
+        }
+        for (long bits = occupiedHi; bits != 0; bits &= bits - 1) {
+            int cell = 64 + Long.numberOfTrailingZeros(bits);
+            key ^= Zobrist.mirroredPiece(piecesById[ids[cell]], cell);
+        }
+        return key;
+    }
+
+    /**
+     * Puts a piece in a cell, updating both occupancy masks. Cells that can
+     * never hold a piece (corners and faces) are ignored.
+     */
+    void placeAt(Piece piece, int x, int y) {
+        int cell = y * SIZE + x;
+        if (!testBit(PLAYABLE_LO, PLAYABLE_HI, cell)) return;
+        int colCell = x * SIZE + y;
+        if (cell < 64) occupiedLo |= 1L << cell;
+        else occupiedHi |= 1L << (cell - 64);
+        if (colCell < 64) occupiedColLo |= 1L << colCell;
+        else occupiedColHi |= 1L << (colCell - 64);
+        ids[cell] = piece.id;
+        piecesById[piece.id] = piece;
+        setSwords(cell, SWORD_SIDES[piece.getLayoutCode()]);
+        long key = Zobrist.piece(piece, cell);
+        zobristKey ^= cellKeys[cell] ^ key;
+        cellKeys[cell] = key;
+        if (cell < 64) changedLo |= 1L << cell;
+        else changedHi |= 1L << (cell - 64);
+    }
+
+    /**
+     * Empties a cell, updating both occupancy masks
+     */
+    void clearAt(int x, int y) {
+        int cell = y * SIZE + x;
+        int colCell = x * SIZE + y;
+        if (cell < 64) occupiedLo &= ~(1L << cell);
+        else occupiedHi &= ~(1L << (cell - 64));
+        if (colCell < 64) occupiedColLo &= ~(1L << colCell);
+        else occupiedColHi &= ~(1L << (colCell - 64));
+        if (cell < 64) changedLo &= ~(1L << cell);
+        else changedHi &= ~(1L << (cell - 64));
+        ids[cell] = 0;
+        setSwords(cell, 0);
+        zobristKey ^= cellKeys[cell];
+        cellKeys[cell] = 0;
+    }
+
+    /**
+     * Updates the sword edges and key of a piece that has been rotated on the board
+     * @param piece piece that was rotated, must be on the board
+     */
+    void pieceTurned(Piece piece) {
+        Coord pos = piece.getPos();
+        placeAt(piece, pos.getX(), pos.getY());
+    }
+
+    /**
+     * Forgets which cells have changed, for when the pieces have been put
+     * back in a position that has already had its reactions resolved,
+     * e.g. by an undo or when a game is loaded
+     */
+    void markSettled() {
+        changedLo = changedHi = 0;
+    }
+
+    /**
+     * Sets the sword edges of a cell
+     * @param sides bit side set for each side with a sword, see SWORD_SIDES
+     */
+    private void setSwords(int cell, int sides) {
+        int half = cell >>> 6;
+        long bit = 1L << (cell & 63);
+        for (int side = 0; side < 4; side++) {
+            int i = side * 2 + half;
+            swords[i] = swords[i] & ~bit | -(sides >> side & 1) & bit;
+        }
+    }
+
+    private boolean hasSword(int cell, int side) {
+        return (swords[side * 2 + (cell >>> 6)] & 1L << (cell & 63)) != 0;
+    }
+
     /**
      * Checks if the coordinates are outside of the 10 x 10 grid or in the corners and if
      * there if not, returns if there is a piece at the location
@@ -23,17 +348,18 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isPieceAtPos(int boardRow, int boardCol) {
-        return !outOfBounds(boardCol, boardRow) && (grid[boardRow][boardCol] != null);
+        return boardRow >= 0 && boardCol >= 0 && boardRow < SIZE && boardCol < SIZE &&
+                isOccupied(boardCol, boardRow);
     }
     public boolean isPieceAtPos(Coord pos) {
         return isPieceAtPos(pos.getY(), pos.getX());
     }
 
-    boolean isPieceAtOffset(int boardX, int boardY, String dir, int offset) {
+    boolean isPieceAtOffset(int boardX, int boardY, Piece.Direction dir, int offset) {
         Coord pos = round.determineOffset(new Coord(boardX, boardY), dir, offset);
         return isPieceAtPos(pos);
     }
-    boolean isPieceAtOffset(Coord origPos, String dir, int offset) {
+    boolean isPieceAtOffset(Coord origPos, Piece.Direction dir, int offset) {
         return isPieceAtOffset(origPos.getX(), origPos.getY(), dir, offset);
     }
 
@@ -47,8 +373,8 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public Piece getPieceAtPos(int boardRow, int boardCol) {
-        if (!outOfBounds(boardCol, boardRow)) {
-            return grid[boardRow][boardCol];
+        if (isPieceAtPos(boardRow, boardCol)) {
+            return piecesById[ids[boardRow * SIZE + boardCol]];
         }
         return null;
     }
@@ -62,19 +388,261 @@ public class Board implements Serializable {
      *
      * @param boardX original x position to calculate offset from
      * @param boardY original y position to calculate offset from
-     * @param dir up/down/left/right
+     * @param dir direction of the offset
      * @param offset int value of how far from original position you want to see whether
      *               there's a piece
      * @return returns the piece or null (if there isn't a piece) at the offset position
      */
-    Piece getPieceAtOffset(int boardX, int boardY, String dir, int offset) {
+    Piece getPieceAtOffset(int boardX, int boardY, Piece.Direction dir, int offset) {
         Coord pos = round.determineOffset(new Coord(boardX, boardY), dir, offset);
         return getPieceAtPos(pos);
     }
-    Piece getPieceAtOffset(Coord origPos, String dir, int offset) {
+    Piece getPieceAtOffset(Coord origPos, Piece.Direction dir, int offset) {
         return getPieceAtOffset(origPos.getX(), origPos.getY(), dir, offset);
     }
 
+    /**
+     * Returns how many pieces are directly in a line next to the given position
+     * in a direction, i.e. how many pieces would be pushed if a piece at the
+     * position moved that way. Read straight off the occupancy bits of the row
+     * or column rather than looking at one cell at a time.
+     *
+     * @param pos position to count from (not included in the count)
+     * @param dir direction of the push
+     * @return number of adjacent pieces, 0 if the next cell is empty
+     */
+    int pushChainLength(Coord pos, Piece.Direction dir) {
+        int x = pos.getX(), y = pos.getY();
+        int line, index;
+        if (dir.dy == 0) {
+            line = lineBits(occupiedLo, occupiedHi, y);
+            index = x;
+        }
+        else {
+            line = lineBits(occupiedColLo, occupiedColHi, x);
+            index = y;
+        }
+        if (dir.dx + dir.dy > 0) {
+            // Count the run of set bits above the index
+            return Integer.numberOfTrailingZeros(~(line >>> (index + 1)));
+        }
+        else {
+            // Count the run of set bits below the index
+            if (index == 0) return 0;
+            return Integer.numberOfLeadingZeros(~(line << (32 - index)));
+        }
+    }
+
+    /**
+     * Moves a piece one cell in a direction along with the whole line of pieces
+     * directly in front of it. The chain is found with one scan of the occupancy
+     * bits, then shifted in a single pass starting from the far end, so every
+     * piece lands in a cell that has already been emptied. A piece shifted off
+     * the grid, into a corner or onto a face goes to its owner's cemetery, and
+     * a sword pushed into a face ends the game. Pieces that stay on the board
+     * don't change lists.
+     *
+     * @param piece piece being moved, must be on the board
+     * @param dir direction to move in
+     */
+    void push(Piece piece, Piece.Direction dir) {
+        Coord pos = piece.getPos();
+        int[] forward = NEXT_CELL[dir.ordinal()];
+        int[] back = NEXT_CELL[dir.opposite().ordinal()];
+
+        int length = pushChainLength(pos, dir);
+        int cell = pos.getY() * SIZE + pos.getX();
+        for (int i = 0; i < length; i++) {
+            cell = forward[cell];
+        }
+
+        for (int i = length; i >= 0; i--) {
+            Piece p = piecesById[ids[cell]];
+            int target = forward[cell];
+            if (target == OFF_GRID || !testBit(PLAYABLE_LO, PLAYABLE_HI, target)) {
+                destroy(cell);
+            }
+            else {
+                if (isGameOver(p, target)) {
+                    round.gameOver(round.players.get(cells[target] >> OWNER_SHIFT & 1));
+                }
+                clearAt(cell % SIZE, cell / SIZE);
+                placeAt(p, target % SIZE, target / SIZE);
+                p.setPos(COORDS[target]);
+            }
+            cell = back[cell];
+        }
+    }
+
+    /**
+     * Takes the piece in a cell off the board and puts it in its owner's cemetery
+     */
+    private void destroy(int cell) {
+        Piece p = piecesById[ids[cell]];
+        clearAt(cell % SIZE, cell / SIZE);
+        p.player.moveToCemetery(p);
+        round.currPlayer.setPieceDestroyed(true); // The current player destroyed it, whoever owned it
+    }
+
+    /**
+     * Finds and resolves every reaction an action has caused. Only the cells
+     * that changed since the last time are looked at: a piece that has been
+     * put down, pushed or turned is checked against its four neighbours and
+     * any new contacts are queued, going through the board from the side of
+     * the player whose turn it is. Reactions are then resolved in the order
+     * they were found, checking the cells of the pieces they move as they go:
+     *  - sword against sword: both pieces are destroyed
+     *  - sword against shield: the piece with the sword is pushed back one
+     *    square, along with anything behind it
+     * A sword against a side with nothing on it doesn't react. A pair of
+     * pieces only reacts once per action, so pieces bouncing between two
+     * shields always come to rest.
+     *
+     * @param record undo record of the action, every piece a reaction
+     *               changes is saved in it first. null if undo is off.
+     */
+    void resolveReactions(UndoRecord record) {
+        stamp++;
+        reactionCount = 0;
+        int next = 0;
+        while (round.state != Round.STATE.GAMEOVER) {
+            findReactions();
+            if (next == reactionCount) break;
+            resolve(reactions[next++], record);
+        }
+        markSettled();
+    }
+
+    /**
+     * Queues the reactions of every changed cell and marks them all unchanged
+     */
+    private void findReactions() {
+        // Cells and sides are gone through from the point of view of the player
+        // whose turn it is, so a position and its mirror image (see Symmetry)
+        // resolve their reactions in the same order
+        boolean flipped = Symmetry.isFlipped(round);
+        while ((changedLo | changedHi) != 0) {
+            int cell;
+            if (flipped) {
+                if (changedHi != 0) {
+                    cell = 127 - Long.numberOfLeadingZeros(changedHi);
+                    changedHi &= ~(1L << (cell - 64));
+                }
+                else {
+                    cell = 63 - Long.numberOfLeadingZeros(changedLo);
+                    changedLo &= ~(1L << cell);
+                }
+            }
+            else if (changedLo != 0) {
+                cell = Long.numberOfTrailingZeros(changedLo);
+                changedLo &= changedLo - 1;
+            }
+            else {
+                cell = 64 + Long.numberOfTrailingZeros(changedHi);
+                changedHi &= changedHi - 1;
+            }
+            for (int i = 0; i < 4; i++) {
+                int side = flipped ? (i + 2) & 3 : i;
+                int next = NEXT_CELL[side][cell];
+                if (next == OFF_GRID || ids[next] == 0) continue;
+                int opposite = (side + 2) & 3;
+                if (reactionAt(cell, side) != NO_REACTION || reactionAt(next, opposite) != NO_REACTION) {
+                    queue(ids[cell], ids[next]);
+                }
+            }
+        }
+    }
+
+    private void queue(int id, int otherId) {
+        int pair = pairIndex(id, otherId);
+        if (pairStamps[pair] == stamp) return;
+        pairStamps[pair] = stamp;
+        if (reactionCount == reactions.length) reactions = Arrays.copyOf(reactions, reactionCount * 2);
+        reactions[reactionCount++] = id << 8 | otherId;
+    }
+
+    /**
+     * Resolves the reaction of a queued pair of pieces from where they are
+     * now, as earlier reactions may have moved or turned them since
+     */
+    private void resolve(int reaction, UndoRecord record) {
+        int id = reaction >>> 8, otherId = reaction & 0xFF;
+        int cell = cellOf(id), side = -1;
+        int otherCell = cellOf(otherId);
+        if (cell >= 0 && otherCell >= 0) {
+            for (int s = 0; s < 4; s++) {
+                if (NEXT_CELL[s][cell] == otherCell) side = s;
+            }
+        }
+        int kind = side < 0 ? NO_REACTION : reactionAt(cell, side);
+        if (kind == NO_REACTION && side >= 0) {
+            kind = reactionAt(otherCell, (side + 2) & 3);
+            cell = otherCell;
+            side = (side + 2) & 3;
+        }
+        if (kind == NO_REACTION) {
+            // Something else moved them apart first, they can react again if they meet again
+            pairStamps[pairIndex(id, otherId)] = 0;
+            return;
+        }
+        int next = NEXT_CELL[side][cell];
+        Piece sword = piecesById[ids[cell]];
+        if (kind == SWORD_SWORD) {
+            if (record != null) {
+                record.save(round, sword);
+                record.save(round, piecesById[ids[next]]);
+            }
+            destroy(cell);
+            destroy(next);
+        }
+        else {
+            Piece.Direction back = DIRECTIONS[(side + 2) & 3];
+            if (record != null) {
+                record.savePushChain(round, sword.getPos(), back, pushChainLength(sword.getPos(), back));
+            }
+            push(sword, back);
+        }
+    }
+
+    /**
+     * @return what happens between the piece in cell, which must be on the board, and the
+     *         piece next to it on a side, with the first piece's sword on that side
+     */
+    private int reactionAt(int cell, int side) {
+        int next = NEXT_CELL[side][cell];
+        if (next == OFF_GRID || ids[next] == 0 || !hasSword(cell, side)) return NO_REACTION;
+        int opposite = (side + 2) & 3;
+        if (hasSword(next, opposite)) return SWORD_SWORD;
+        int ability = piecesById[ids[next]].getLayoutCode() >> (2 * opposite) & 3;
+        return ability == SHIELD ? SWORD_SHIELD : NO_REACTION;
+    }
+
+    /**
+     * @return the cell of the piece with an id, -1 if it isn't on the board
+     */
+    private int cellOf(int id) {
+        Coord pos = piecesById[id].getPos();
+        if (pos == null || pos.getX() < 0 || pos.getY() < 0 || pos.getX() >= SIZE || pos.getY() >= SIZE) return -1;
+        int cell = pos.getY() * SIZE + pos.getX();
+        return ids[cell] == id ? cell : -1;
+    }
+
+    private static int pairIndex(int id, int otherId) {
+        return Math.min(id, otherId) * (Piece.MAX_ID + 1) + Math.max(id, otherId);
+    }
+
+    /**
+     * Returns whether any of the four cells directly next to a position
+     * holds a piece
+     *
+     * @param pos position to look around
+     * @return true if there's a piece above, below, left or right of pos
+     */
+    public boolean isPieceAdjacent(Coord pos) {
+        int cell = pos.getY() * SIZE + pos.getX();
+        return (occupiedLo & NEIGHBOURS_LO[cell]) != 0 || (occupiedHi & NEIGHBOURS_HI[cell]) != 0;
+    }
+
     /**
      * Depending on the position you pass in, it can do multiple things.
      * If you are trying to place the piece on the Face position, it will
@@ -86,8 +654,7 @@ public class Board implements Serializable {
      * @param pos The position you want the piece to be set to
      */
     void setPieceToPos(Piece piece, Coord pos) {
-        if (isNextToFace(pos.getX(), pos.getY())) {
-            //FIXME: If you do reactions, make check if sword facing and win/lose if so.
+        if (piece != null && isNextToFace(pos.getX(), pos.getY())) {
             if (isGameOver(piece, pos.getX(), pos.getY())) {
                 Player p = getPlayerWhoLost(pos.getX(), pos.getY());
                 round.gameOver(p);
@@ -95,24 +662,25 @@ public class Board implements Serializable {
         }
         if (isFacePosition(pos.getX(), pos.getY())) {
             round.currPlayer.moveToCemetery(piece);
+            round.currPlayer.setPieceDestroyed(true);
         }
-        if (!outOfBounds(pos.getX(), pos.getY())) {
+        else if (!outOfBounds(pos.getX(), pos.getY())) {
             round.currPlayer.getPiecesOnBoard().remove(getPieceAtPos(pos));
-            grid[pos.getY()][pos.getX()] = piece;
+            if (piece == null) clearAt(pos.getX(), pos.getY());
+            else placeAt(piece, pos.getX(), pos.getY());
         }
         else {
             round.currPlayer.moveToCemetery(piece);
+            round.currPlayer.setPieceDestroyed(true);
         }
     }
 
+    /**
+     * @return the player whose face is next to x, y, null if it isn't next to a face
+     */
     private Player getPlayerWhoLost(int x, int y) {
-        if (x == 2 && y == 1 || x == 1 && y == 2) {
-            return round.getPlayerbyColor(Player.ColorIdentity.GREEN);
-        }
-        else if (x == 7 && y == 8 || x == 8 && y == 7) {
-            return round.getPlayerbyColor(Player.ColorIdentity.YELLOW);
-        }
-        return null;
+        if (kindAt(x, y) != NEXT_TO_FACE) return null;
+        return round.players.get(cells[y * SIZE + x] >> OWNER_SHIFT & 1);
     }
 
     /**
@@ -127,23 +695,13 @@ public class Board implements Serializable {
         setPieceToPos(player, round.currPlayer.spawnPoint);
     }
 
-    /**
-     * Sets a piece at a specific position on the grid to null.
-     * Used when moving pieces (we destroy current position and assign new pos)
-     *
-     * @param pos Piece at position to destroy
-     */
-    void destroy(Coord pos) {
-        setPieceToPos(null, pos);
-    }
-
     /**
      * Returns whether there is a piece at a parameterised offset away from an original
      * position that is given
      *
      * @param boardX original x position to calculate offset from
      * @param boardY original y position to calculate offset from
-     * @param dir up/down/left/right
+     * @param dir direction of the offset
      * @param offset int value of how far from original position you want to see whether
      *               there's a piece
      * @return returns if there's a piece at the offset position
@@ -160,12 +718,7 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     boolean outOfBounds(int x, int y) {
-        return (y < 0 || x < 0 || x > 9 || y > 9 ||
-                (y == 0 && (x == 0 || x == 1)) ||
-                (y == 1 && (x == 0)) ||
-                (y == 9 && (x == 9 || x == 8)) ||
-                (y == 8) && (x == 9)
-        );
+        return kindAt(x, y) == OUT;
     }
 
     /**
@@ -179,10 +732,7 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isOutOfBoundsOnBoard(int boardRow, int boardCol) {
-        return ((boardRow == 0 && (boardCol == 0 || boardCol == 1)) ||
-                (boardRow == 1 && (boardCol == 0)) ||
-                (boardRow == 9 && (boardCol == 9 || boardCol == 8)) ||
-                (boardRow == 8) && (boardCol == 9));
+        return kindAt(boardCol, boardRow) == OUT;
     }
 
     /**
@@ -194,11 +744,7 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isFacePosition(int x, int y) {
-        return ((y == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getY() &&
-                x == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getX()) ||
-
-                (y == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getY() &&
-                        x == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getX()));
+        return kindAt(x, y) == FACE;
     }
 
     /**
@@ -211,26 +757,21 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     boolean isNextToFace(int x, int y) {
-        return ((y == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getY() &&
-                x == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getX() + 1) ||
-
-                (y == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getY() + 1 &&
-                        x == round.getPlayerbyColor(Player.ColorIdentity.GREEN).homeFace.getX()) ||
-
-
-                (y == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getY() - 1 &&
-                        x == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getX()) ||
-
-                (y == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getY() &&
-                        x == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).homeFace.getX() - 1));
+        return kindAt(x, y) == NEXT_TO_FACE;
     }
 
+    /**
+     * Returns whether a piece at x, y would have a sword pointing at a face,
+     * which loses the game for the player whose face it is
+     */
     boolean isGameOver(Piece piece, int x, int y) {
-        return  (x == 2 && y == 1 && piece.layout.get(Piece.Direction.WEST) == Piece.Abilities.SWORD ||
-                 x == 1 && y == 2 && piece.layout.get(Piece.Direction.NORTH) == Piece.Abilities.SWORD ||
-                 x == 7 && y == 8 && piece.layout.get(Piece.Direction.EAST) == Piece.Abilities.SWORD ||
-                 x == 8 && y == 7 && piece.layout.get(Piece.Direction.SOUTH) == Piece.Abilities.SWORD
-        );
+        return kindAt(x, y) == NEXT_TO_FACE && isGameOver(piece, y * SIZE + x);
+    }
+
+    private boolean isGameOver(Piece piece, int cell) {
+        int kind = cells[cell];
+        return (kind & KIND_MASK) == NEXT_TO_FACE &&
+                piece.ability(DIRECTIONS[kind >> FACING_SHIFT & 3]) == Piece.Abilities.SWORD;
     }
 
 
@@ -245,10 +786,6 @@ public class Board implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isSpawnPosition(int x, int y) {
-        return ((y == round.getPlayerbyColor(Player.ColorIdentity.GREEN).spawnPoint.getY() &&
-                x == round.getPlayerbyColor(Player.ColorIdentity.GREEN).spawnPoint.getX()) ||
-
-                (y == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).spawnPoint.getY() &&
-                        x == round.getPlayerbyColor(Player.ColorIdentity.YELLOW).spawnPoint.getX()));
+        return kindAt(x, y) == SPAWN;
     }
 }
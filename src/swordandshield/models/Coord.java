@@ -25,11 +25,16 @@ public class Coord implements Serializable{
         }
     }
 
-    int getX() {
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
+    public int getX() {
         return x;
     }
 
-    int getY() {
+    public int getY() {
         return y;
     }
 
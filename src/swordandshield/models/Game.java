@@ -1,6 +1,14 @@
 package swordandshield.models;
 
-import java.io.*;
+import swordandshield.controllers.InputController;
+import swordandshield.controllers.ai.AlphaBetaController;
+import swordandshield.controllers.ai.MctsController;
+import swordandshield.startup.PieceCatalogue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Game {
 
@@ -8,7 +16,52 @@ public class Game {
         new Round(Round.STATE.RUNNING);
     }
 
-    public static void main(String[] args) {
-        new Game();
+    public Game(InputController inputController) {
+        new Round(Round.STATE.RUNNING, inputController);
+    }
+
+    public Game(InputController inputController, boolean fullRedraw) {
+        new Round(Round.STATE.RUNNING, inputController, fullRedraw);
+    }
+
+    /**
+     * Usage: Game [--pieces file] [--full-redraw] [--ai yellow|green [millis]] [--mcts yellow|green [millis [threads]]]
+     *        Game [--pieces file] --script [--render N] [--undo] [file ...]
+     * --pieces sets up the games with the pieces of a different piece data
+     * file instead of PieceData.txt.
+     * With --ai or --mcts the computer plays the given colour, spending
+     * millis (default 1000) searching for each of its actions.
+     * On a terminal tall enough for the board only the parts of it that
+     * changed are redrawn, --full-redraw reprints the whole board after every command instead.
+     * --script plays games from files of commands, see Script.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("--pieces")) {
+            PieceCatalogue.setDefaultFile(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length >= 1 && args[0].equals("--script")) {
+            Script.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean fullRedraw = options.remove("--full-redraw") || System.console() == null;
+        args = options.toArray(new String[0]);
+
+        if (args.length >= 2 && args[0].equals("--ai")) {
+            Player.ColorIdentity color = Player.ColorIdentity.valueOf(args[1].toUpperCase());
+            long millis = args.length >= 3 ? Long.parseLong(args[2]) : 1000;
+            new Game(new AlphaBetaController(color, millis), fullRedraw);
+        }
+        else if (args.length >= 2 && args[0].equals("--mcts")) {
+            Player.ColorIdentity color = Player.ColorIdentity.valueOf(args[1].toUpperCase());
+            long millis = args.length >= 3 ? Long.parseLong(args[2]) : 1000;
+            int threads = args.length >= 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            new Game(new MctsController(color, millis, threads, System.nanoTime()), fullRedraw);
+        }
+        else {
+            new Game(new InputController(), fullRedraw);
+        }
     }
 }
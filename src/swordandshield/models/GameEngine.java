@@ -0,0 +1,374 @@
+package swordandshield.models;
+
+import swordandshield.startup.PieceCatalogue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Runs games of Sword and Shield without any console I/O. There is no
+ * BoardView, UserIOView or Parser, actions are applied by calling methods
+ * on the engine and the result is read back once the game is over.
+ * The same engine can be reset and reused for many games so piece data
+ * is only loaded once, which is what makes bulk simulation cheap.
+ */
+public class GameEngine {
+
+    private static final Piece.Direction[] DIRECTIONS = {
+            Piece.Direction.NORTH, Piece.Direction.SOUTH, Piece.Direction.WEST, Piece.Direction.EAST};
+
+    private final Round round;
+
+    // Every piece of both players and the layout it started the game with
+    private final List<Piece> pieces = new ArrayList<>();
+    private final Piece[] piecesById = new Piece[Piece.MAX_ID + 1];
+    private final int[] startLayouts = new int[Piece.MAX_ID + 1];
+
+    // Reused by playRandomTurn() so random playouts don't allocate
+    private final int[] turnBuffer = new int[Player.MAX_PIECES];
+
+    private int turns;
+
+    // Packed actions (see MoveGenerator) that got the game to where it is, undone actions are taken out
+    private int[] history = new int[256];
+    private int historyLength;
+
+    public GameEngine() {
+        this(PieceCatalogue.getDefault());
+    }
+
+    /**
+     * @param catalogue pieces both players are given
+     */
+    public GameEngine(PieceCatalogue catalogue) {
+        round = new Round(catalogue);
+        round.recordUndo = false;
+        for (Player p : round.players) {
+            for (Piece piece : p.piecesAvailable) {
+                pieces.add(piece);
+                piecesById[piece.id] = piece;
+                startLayouts[piece.id] = piece.getLayoutCode();
+            }
+        }
+    }
+
+    /**
+     * Puts the game back to how it is before the first move. Every
+     * piece goes back to its owner's available pieces in letter order.
+     */
+    public void reset() {
+        round.board.clear();
+        round.prevMoves.clear();
+        for (Player p : round.players) {
+            p.makeAllAvailable();
+            p.reset();
+            p.lost = false;
+        }
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            piece.setPos(null);
+            if (piece.getLayoutCode() != startLayouts[piece.id]) piece.setLayoutCode(startLayouts[piece.id]);
+        }
+        round.currPlayer = round.players.get(0);
+        round.state = Round.STATE.RUNNING;
+        turns = 0;
+        historyLength = 0;
+    }
+
+    /**
+     * Copies the state of another round into this engine, e.g. so a search can
+     * play out games from a position without touching the real game. Both must
+     * have been loaded from the same piece data.
+     * @param other round to copy
+     */
+    public void load(Round other) {
+        round.board.clear();
+        round.prevMoves.clear();
+        for (int i = 0; i < other.players.size(); i++) {
+            Player from = other.players.get(i);
+            Player to = round.players.get(i);
+            to.copyZones(from);
+            int onBoard = from.zoneMask(Player.Zone.BOARD);
+            int all = onBoard | from.zoneMask(Player.Zone.AVAILABLE) | from.zoneMask(Player.Zone.CEMETERY);
+            for (int bits = all; bits != 0; bits &= bits - 1) {
+                int letter = Integer.numberOfTrailingZeros(bits);
+                Piece source = from.pieceOf(letter);
+                Piece piece = piecesById[source.id];
+                piece.setPos(source.getPos());
+                if (piece.getLayoutCode() != source.getLayoutCode()) piece.setLayoutCode(source.getLayoutCode());
+                if ((onBoard & 1 << letter) != 0) {
+                    round.board.placeAt(piece, source.getPos().getX(), source.getPos().getY());
+                }
+            }
+            to.setTurnState(from.getTurnState());
+            to.lost = from.lost;
+            if (other.currPlayer == from) round.currPlayer = to;
+        }
+        round.board.markSettled();
+        round.state = other.state == Round.STATE.GAMEOVER ? Round.STATE.GAMEOVER : Round.STATE.RUNNING;
+        turns = 0;
+        historyLength = 0;
+    }
+
+    /**
+     * Turns undo records on or off. They are off by default,
+     * searches that need to take back moves should turn them on.
+     * @param recordUndo true to keep undo records
+     */
+    public void setRecordUndo(boolean recordUndo) {
+        round.recordUndo = recordUndo;
+    }
+
+    // Actions
+
+    /**
+     * Creates one of the current player's available pieces at their spawn point.
+     * Pieces can only be created at the start of a turn.
+     * @param letter A-X letter of the piece
+     * @param degrees 0/90/180/270
+     * @return false if the action isn't allowed, nothing is changed
+     */
+    public boolean create(char letter, int degrees) {
+        if (isGameOver() || !round.currPlayer.isStartOfTurn()) return false;
+        Piece p = round.currPlayer.getPiece(Player.Zone.AVAILABLE, letter);
+        if (p == null || !round.createPiece(p, degrees / 90)) return false;
+        record(MoveGenerator.encode(MoveGenerator.CREATE, MoveGenerator.letterOf(p), (degrees / 90) & 3));
+        return true;
+    }
+
+    /**
+     * Moves one of the current player's pieces on the board
+     * @param letter A-X letter of the piece
+     * @param dir direction to move in
+     * @return false if the action isn't allowed, nothing is changed
+     */
+    public boolean move(char letter, Piece.Direction dir) {
+        if (isGameOver()) return false;
+        Piece p = round.currPlayer.getPiece(Player.Zone.BOARD, letter);
+        return p != null && movePiece(p, dir);
+    }
+
+    /**
+     * Rotates one of the current player's pieces on the board
+     * @param letter A-X letter of the piece
+     * @param degrees 0/90/180/270
+     * @return false if the action isn't allowed, nothing is changed
+     */
+    public boolean rotate(char letter, int degrees) {
+        if (isGameOver()) return false;
+        Piece p = round.currPlayer.getPiece(Player.Zone.BOARD, letter);
+        return p != null && rotatePiece(p, degrees / 90);
+    }
+
+    /**
+     * Ends the current player's turn
+     * @return false if the game is already over
+     */
+    public boolean pass() {
+        if (isGameOver()) return false;
+        round.changePlayer();
+        turns++;
+        record(MoveGenerator.encode(MoveGenerator.PASS, 0, 0));
+        return true;
+    }
+
+    /**
+     * Takes back the last action of this turn. Needs undo records on.
+     * @return false if there is nothing this turn to undo
+     */
+    public boolean undo() {
+        if (!round.undo()) return false;
+        historyLength--; // Undo never goes back past a pass, so this is the action it took back
+        return true;
+    }
+
+    private boolean movePiece(Piece p, Piece.Direction dir) {
+        if (!round.movePiece(p, dir)) return false;
+        record(MoveGenerator.encode(MoveGenerator.MOVE, MoveGenerator.letterOf(p), dir.ordinal()));
+        return true;
+    }
+
+    private boolean rotatePiece(Piece p, int numRots) {
+        if (!round.rotatePiece(p, numRots)) return false;
+        record(MoveGenerator.encode(MoveGenerator.ROTATE, MoveGenerator.letterOf(p), numRots & 3));
+        return true;
+    }
+
+    private void record(int action) {
+        if (historyLength == history.length) history = Arrays.copyOf(history, history.length * 2);
+        history[historyLength++] = action;
+    }
+
+    /**
+     * Writes every legal action for the current player into the buffer,
+     * see MoveGenerator
+     * @param buffer at least MoveGenerator.MAX_ACTIONS long
+     * @return number of actions written
+     */
+    public int legalActions(int[] buffer) {
+        return MoveGenerator.generate(round, buffer);
+    }
+
+    /**
+     * Applies a packed action from legalActions()
+     * @param action packed action, see MoveGenerator
+     * @return false if the action isn't allowed
+     */
+    public boolean apply(int action) {
+        if (isGameOver()) return false;
+        switch (MoveGenerator.type(action)) {
+            case MoveGenerator.PASS:
+                return pass();
+            case MoveGenerator.UNDO:
+                return undo();
+            default:
+                if (!MoveGenerator.apply(round, action)) return false;
+                record(action);
+                return true;
+        }
+    }
+
+    // Random playouts
+
+    /**
+     * Plays a whole game from the start where both players pick random actions
+     * @param random source of randomness, the same seed plays the same game
+     * @param maxTurns turns to play before giving up and calling it a draw
+     * @return the winner, or null if nobody won within maxTurns
+     */
+    public Player playRandomGame(SplittableRandom random, int maxTurns) {
+        reset();
+        return playRandomly(random, maxTurns);
+    }
+
+    /**
+     * Carries on the game from where it is with both players picking random
+     * actions, finishing the current player's turn first
+     * @param random source of randomness
+     * @param maxTurns turns to play from here before calling it a draw
+     * @return the winner, or null if nobody won within maxTurns
+     */
+    public Player playRandomly(SplittableRandom random, int maxTurns) {
+        int lastTurn = turns + maxTurns;
+        while (!isGameOver() && turns < lastTurn) {
+            playRandomTurn(random);
+            pass();
+        }
+        return getWinner();
+    }
+
+    /**
+     * Plays one turn of random actions for the current player without passing.
+     * Half the time a random piece is created first, then every piece on the
+     * board is, in a random order, either left alone, moved or rotated.
+     * @param random source of randomness
+     */
+    public void playRandomTurn(SplittableRandom random) {
+        // Pieces are picked by letter from the zone masks, going through the
+        // zone lists would rebuild their order after every create and destroy
+        Player player = round.currPlayer;
+        int available = player.zoneMask(Player.Zone.AVAILABLE);
+        if (available != 0 && random.nextBoolean()) {
+            for (int skip = random.nextInt(Integer.bitCount(available)); skip > 0; skip--) available &= available - 1;
+            create((char) ('A' + Integer.numberOfTrailingZeros(available)), 90 * random.nextInt(4));
+        }
+
+        int n = 0;
+        for (int bits = player.zoneMask(Player.Zone.BOARD); bits != 0; bits &= bits - 1) {
+            turnBuffer[n++] = Integer.numberOfTrailingZeros(bits);
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = turnBuffer[i];
+            turnBuffer[i] = turnBuffer[j];
+            turnBuffer[j] = tmp;
+        }
+
+        for (int i = 0; i < n && !isGameOver(); i++) {
+            int letter = turnBuffer[i];
+            // Could have been pushed off the board by an earlier move this turn
+            if ((player.zoneMask(Player.Zone.BOARD) & 1 << letter) == 0) continue;
+            Piece p = player.pieceOf(letter);
+            switch (random.nextInt(3)) {
+                case 1:
+                    movePiece(p, DIRECTIONS[random.nextInt(4)]);
+                    break;
+                case 2:
+                    rotatePiece(p, 1 + random.nextInt(3));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Game state
+
+    public boolean isGameOver() {
+        return round.state == Round.STATE.GAMEOVER;
+    }
+
+    /**
+     * @return the player who won, or null if the game isn't over
+     */
+    public Player getWinner() {
+        if (!isGameOver()) return null;
+        for (Player p : round.players) {
+            if (p.lost) return round.getNextPlayer(p);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of turns passed so far this game
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Returns the actions played so far this game, in order, e.g. to save the
+     * game as a record. Replaying them with apply() on a reset engine plays
+     * the same game again.
+     * @return packed actions, only the first getHistoryLength() are used.
+     *         Only valid until the next action.
+     */
+    public int[] getHistory() {
+        return history;
+    }
+
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    /**
+     * Works out a fingerprint of the piece set the engine was loaded with,
+     * i.e. the layout of every piece. Records of games played with one piece
+     * set can only be replayed on engines with the same fingerprint.
+     * @return 64 bit FNV-1a hash of the starting layouts
+     */
+    public long getPieceSetFingerprint() {
+        return pieceSetFingerprint(startLayouts);
+    }
+
+    /**
+     * @param startLayouts starting layout code of every piece, indexed by id
+     */
+    static long pieceSetFingerprint(int[] startLayouts) {
+        long hash = 0xCBF29CE484222325L;
+        for (int id = 1; id < startLayouts.length; id++) {
+            hash = (hash ^ startLayouts[id]) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    public Player getCurrentPlayer() {
+        return round.currPlayer;
+    }
+
+    public Round getRound() {
+        return round;
+    }
+}
@@ -0,0 +1,98 @@
+package swordandshield.models;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Precomputed piece layouts. A layout fits in 8 bits, 2 bits for the ability
+ * on each side (NORTH in the lowest bits, then EAST, SOUTH, WEST), so turning
+ * a piece 90 degrees clockwise is just rotating those 8 bits left by 2.
+ *
+ * Every layout in every orientation is worked out once, up front, so rotating
+ * a piece is a single table read. There is also one immutable Map per layout,
+ * shared by every piece with that layout, so a rotate never allocates.
+ */
+public final class LayoutTable {
+
+    private static final Piece.Direction[] DIRECTIONS = Piece.Direction.values();
+    private static final Piece.Abilities[] ABILITIES = Piece.Abilities.values();
+
+    // Shared read only Map for every 8 bit layout, null for codes that aren't a layout
+    private static final Map<Piece.Direction, Piece.Abilities>[] MAPS = buildMaps();
+
+    // ROTATIONS[n][code] is code turned n * 90 degrees clockwise
+    private static final byte[][] ROTATIONS = buildRotations();
+
+    private LayoutTable() {}
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<Piece.Direction, Piece.Abilities>[] buildMaps() {
+        Map<Piece.Direction, Piece.Abilities>[] maps = new Map[256];
+        for (int code = 0; code < 256; code++) {
+            Map<Piece.Direction, Piece.Abilities> map = new EnumMap<>(Piece.Direction.class);
+            boolean valid = true;
+            for (Piece.Direction d : DIRECTIONS) {
+                int ability = (code >>> (2 * d.ordinal())) & 3;
+                if (ability >= ABILITIES.length) valid = false;
+                else map.put(d, ABILITIES[ability]);
+            }
+            if (valid) maps[code] = Collections.unmodifiableMap(map);
+        }
+        return maps;
+    }
+
+    private static byte[][] buildRotations() {
+        byte[][] rotations = new byte[4][256];
+        for (int code = 0; code < 256; code++) {
+            int rotated = code;
+            for (int n = 0; n < 4; n++) {
+                rotations[n][code] = (byte) rotated;
+                rotated = ((rotated << 2) | (rotated >>> 6)) & 0xFF;
+            }
+        }
+        return rotations;
+    }
+
+    /**
+     * Packs a layout Map into 8 bits
+     * @param layout ability on every side of a piece
+     * @return the layout code
+     */
+    public static int encode(Map<Piece.Direction, Piece.Abilities> layout) {
+        int code = 0;
+        for (Piece.Direction d : DIRECTIONS) {
+            code |= layout.get(d).ordinal() << (2 * d.ordinal());
+        }
+        return code;
+    }
+
+    /**
+     * Packs the abilities of each side into a layout code
+     */
+    public static int encode(Piece.Abilities north, Piece.Abilities east, Piece.Abilities south, Piece.Abilities west) {
+        return north.ordinal() | east.ordinal() << 2 | south.ordinal() << 4 | west.ordinal() << 6;
+    }
+
+    /**
+     * Turns a layout code 90 degrees clockwise the given number of times,
+     * i.e. after one turn the new north is the old west
+     * @param code layout to turn
+     * @param times number of 90 degree turns, may be more than 3
+     * @return the turned layout code
+     */
+    public static int rotateCW(int code, int times) {
+        return ROTATIONS[times & 3][code & 0xFF] & 0xFF;
+    }
+
+    public static Piece.Abilities ability(int code, Piece.Direction dir) {
+        return ABILITIES[(code >>> (2 * dir.ordinal())) & 3];
+    }
+
+    /**
+     * @return the shared, read only Map of a layout code
+     */
+    public static Map<Piece.Direction, Piece.Abilities> asMap(int code) {
+        return MAPS[code & 0xFF];
+    }
+}
@@ -0,0 +1,160 @@
+package swordandshield.models;
+
+import java.util.List;
+
+/**
+ * Lists every legal action the current player can take. Actions are
+ * packed into ints so they can be written into a buffer the caller owns
+ * and reuses, nothing is allocated while generating.
+ *
+ * An action is laid out as (type << 7) | (letter << 2) | arg where letter
+ * is 0-23 for A-X and arg is a direction (up, right, down, left) for moves
+ * or a number of 90 degree clockwise turns for creates and rotates.
+ * Every action fits in 10 bits.
+ */
+public class MoveGenerator {
+
+    public static final int PASS = 0;
+    public static final int CREATE = 1;
+    public static final int MOVE = 2;
+    public static final int ROTATE = 3;
+    public static final int UNDO = 4;
+
+    // Directions in the order of their arg value
+    static final Piece.Direction[] DIRECTIONS = Piece.Direction.values();
+
+    // One pass, then 4 creates/moves/rotates for each of the 24 pieces
+    public static final int MAX_ACTIONS = 1 + 3 * 4 * 24;
+
+    // Packing
+
+    public static int encode(int type, int letter, int arg) {
+        return (type << 7) | (letter << 2) | arg;
+    }
+
+    public static int type(int action) {
+        return action >>> 7;
+    }
+
+    public static int letter(int action) {
+        return (action >>> 2) & 0x1F;
+    }
+
+    public static char letterChar(int action) {
+        return (char) ('A' + letter(action));
+    }
+
+    public static int arg(int action) {
+        return action & 0x3;
+    }
+
+    /**
+     * @param action packed move action
+     * @return direction the piece moves in
+     */
+    public static Piece.Direction direction(int action) {
+        return DIRECTIONS[arg(action)];
+    }
+
+    /**
+     * Returns the action as the command a user would type for it
+     * @param action packed action
+     * @return e.g. "move B up" or "create C 90"
+     */
+    public static String toString(int action) {
+        switch (type(action)) {
+            case CREATE:
+                return "create " + letterChar(action) + " " + 90 * arg(action);
+            case MOVE:
+                return "move " + letterChar(action) + " " + DIRECTIONS[arg(action)].word;
+            case ROTATE:
+                return "rotate " + letterChar(action) + " " + 90 * arg(action);
+            case UNDO:
+                return "undo";
+            default:
+                return "pass";
+        }
+    }
+
+    // Generation
+
+    /**
+     * Writes every legal action for the current player into the buffer.
+     * Creates are only legal at the start of a turn with an empty spawn
+     * point, moves only for pieces on the board that haven't been altered
+     * this turn, rotates for any piece on the board while the player has a
+     * move left, and passing is always legal. Undo isn't
+     * generated as it isn't a move in the game.
+     *
+     * @param round round to generate actions for
+     * @param buffer where the actions are written, at least MAX_ACTIONS long
+     * @return number of actions written, 0 if the game is over
+     */
+    public static int generate(Round round, int[] buffer) {
+        if (round.state == Round.STATE.GAMEOVER) return 0;
+        Player player = round.currPlayer;
+        int n = 0;
+        buffer[n++] = encode(PASS, 0, 0);
+
+        int allowed = round.allowedActions();
+        if ((allowed & (1 << CREATE)) != 0 && !round.board.isPieceAtPos(player.spawnPoint)) {
+            List<Piece> available = player.piecesAvailable;
+            for (int i = 0; i < available.size(); i++) {
+                int letter = letterOf(available.get(i));
+                for (int rot = 0; rot < 4; rot++) {
+                    buffer[n++] = encode(CREATE, letter, rot);
+                }
+            }
+        }
+
+        if ((allowed & (1 << MOVE)) == 0) return n;
+        List<Piece> onBoard = player.piecesOnBoard;
+        for (int i = 0; i < onBoard.size(); i++) {
+            Piece p = onBoard.get(i);
+            int letter = letterOf(p);
+            if (!p.beenAlteredThisTurn()) {
+                for (int arg = 0; arg < 4; arg++) {
+                    buffer[n++] = encode(MOVE, letter, arg);
+                }
+            }
+            for (int arg = 0; arg < 4; arg++) {
+                buffer[n++] = encode(ROTATE, letter, arg);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Applies an action generated by generate() to the round
+     * @param round round to apply it to
+     * @param action packed action
+     * @return false if the action couldn't be applied
+     */
+    public static boolean apply(Round round, int action) {
+        Player player = round.currPlayer;
+        switch (type(action)) {
+            case CREATE: {
+                if (!player.isStartOfTurn()) return false;
+                Piece p = player.getPiece(Player.Zone.AVAILABLE, letterChar(action));
+                return p != null && round.createPiece(p, arg(action));
+            }
+            case MOVE: {
+                Piece p = player.getPiece(Player.Zone.BOARD, letterChar(action));
+                return p != null && round.movePiece(p, DIRECTIONS[arg(action)]);
+            }
+            case ROTATE: {
+                Piece p = player.getPiece(Player.Zone.BOARD, letterChar(action));
+                return p != null && round.rotatePiece(p, arg(action));
+            }
+            case UNDO:
+                return round.undo();
+            default:
+                round.changePlayer();
+                return true;
+        }
+    }
+
+    static int letterOf(Piece p) {
+        return p.letter;
+    }
+}
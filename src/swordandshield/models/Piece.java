@@ -1,7 +1,8 @@
 package swordandshield.models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -11,19 +12,63 @@ public class Piece implements Serializable{
 
     Player player;
 
-    // Set to true once a turn for each player if it gets moved, rotated etc
-    private boolean beenAltered = false;
-
     private String name;
     private Coord pos;
 
-    Map<Direction, Abilities> layout = new HashMap<>();
+    // Unique across both players, used by the Board to find the piece in a cell. 0 is never used.
+    static final int MAX_ID = 2 * 24;
+    final byte id;
+    // 0 - 23 for A - X, read on every zone change so it isn't worked out from the name
+    final byte letter;
+
+    // Abilities packed 2 bits a side, see LayoutTable. layout is the shared read only Map of the same code.
+    private final int startLayoutCode;
+    private int layoutCode;
+    private int orientation;
+    // Turns it takes to get back to the start layout: 1, 2 or 4
+    private final int period;
+    transient Map<Direction, Abilities> layout;
 
+    /**
+     * A side of a piece, and the direction pieces move in on the board.
+     * The order is clockwise and is relied on by LayoutTable.
+     */
     public enum Direction {
-        NORTH,
-        EAST,
-        SOUTH,
-        WEST
+        NORTH(0, -1, "up"),
+        EAST(1, 0, "right"),
+        SOUTH(0, 1, "down"),
+        WEST(-1, 0, "left");
+
+        private static final Direction[] VALUES = values();
+
+        public final int dx;
+        public final int dy;
+        public final String word;
+
+        Direction(int dx, int dy, String word) {
+            this.dx = dx;
+            this.dy = dy;
+            this.word = word;
+        }
+
+        /**
+         * Used in reactions
+         */
+        public Direction opposite() {
+            return VALUES[(ordinal() + 2) & 3];
+        }
+
+        /**
+         * Finds the direction a player typed
+         * @param word up/down/left/right, any case
+         * @return the direction or null if it isn't one
+         */
+        public static Direction fromWord(String word) {
+            for (Direction d : VALUES) {
+                if (d.word.equalsIgnoreCase(word)) return d;
+            }
+            return null;
+        }
     }
 
     public enum Abilities {
@@ -33,88 +78,57 @@ public class Piece implements Serializable{
     }
 
     public Piece(Player player, Character name, Map<Direction, Abilities> layout) {
+        this(player, name, LayoutTable.encode(layout));
+    }
+
+    /**
+     * @param layoutCode abilities of each side as packed by LayoutTable.encode()
+     */
+    public Piece(Player player, Character name, int layoutCode) {
         this.player = player;
         this.name = name.toString().toUpperCase();
-        this.layout = layout;
+        this.letter = (byte) (this.name.charAt(0) - 'A');
+        this.id = (byte) (player.token.ordinal() * 24 + letter + 1);
+        this.startLayoutCode = layoutCode;
+        this.period = LayoutTable.rotateCW(layoutCode, 1) == layoutCode ? 1 : LayoutTable.rotateCW(layoutCode, 2) == layoutCode ? 2 : 4;
+        this.glyphs = buildGlyphs();
+        setLayoutCode(layoutCode);
     }
 
     /**
-     * Handles the shifting of a piece around the board.
-     * It destroys the piece by setting the position on the grid
-     * equal to null.
-     * It then sets it's position to 1 square offset away from the
-     * previous position in the direction specified by the parameter
-     * @param dir direction of offset move. move(east) moves it one
+     * Handles the shifting of a piece around the board. The piece moves
+     * 1 square in the direction specified by the parameter, pushing any
+     * pieces in front of it along too. See Board.push()
+     * @param dir direction of offset move. move(EAST) moves it one
      *            square east
      */
-    public void move(Round round, String dir) {
-        round.board.destroy(pos);
-        if (dir.equalsIgnoreCase("up")) addToPlayersBoardPieces(pos.getX(), pos.getY() - 1);
-        else if (dir.equalsIgnoreCase("down")) addToPlayersBoardPieces(pos.getX(), pos.getY() + 1);
-        else if (dir.equalsIgnoreCase("left")) addToPlayersBoardPieces(pos.getX() - 1, pos.getY());
-        else if (dir.equalsIgnoreCase("right")) addToPlayersBoardPieces(pos.getX() + 1, pos.getY());
-        round.board.setPieceToPos(this, getPos());
+    public void move(Round round, Direction dir) {
+        round.board.push(this, dir);
     }
 
     /**
-     * Rotates a piece 90 degrees every time for the parameter times
+     * Rotates a piece 90 degrees every time for the parameter times.
+     * Placement of swords and shields shifts clockwise around the piece.
      * @param times number of times to rotate by 90 degrees
      */
     public void rotatePieceCW(int times) {
-        for (int i = 0; i < times; i++) {
-            rotatePieceCW();
-        }
-    }
-
-    /**
-     * Changes piece layout so that placement of swords and shields
-     * are shifted clockwise around the piece
-     */
-    private void rotatePieceCW() {
-        Map<Direction, Abilities> newLayout = new HashMap<>();
-        newLayout.put(Direction.NORTH, layout.get(Direction.WEST));
-        newLayout.put(Direction.EAST, layout.get(Direction.NORTH));
-        newLayout.put(Direction.SOUTH, layout.get(Direction.EAST));
-        newLayout.put(Direction.WEST, layout.get(Direction.SOUTH));
-        layout = newLayout;
-    }
-
-    /**
-     * Used in reactions
-     * @param currDir
-     * @return
-     */
-    private String getOppositeDirection(String currDir) {
-        switch (currDir) {
-            case "up":
-                return "down";
-            case "down":
-                return "up";
-            case "left":
-                return "right";
-            case "right":
-                return "left";
-            default:
-                return "";
-        }
+        setLayoutCode(LayoutTable.rotateCW(layoutCode, times));
     }
 
     /**
      * Given a piece, a direction to look and its current position it
-     * recursively finds how many pieces are adjacent to it in that
-     * direction. If there is nothing to the east when dir = east, then
-     * it would return 0.
+     * finds how many pieces are adjacent to it in that direction.
+     * If there is nothing to the east when dir = east, then it would
+     * return 0. See Board.pushChainLength()
      * @param round round reference
-     * @param currPos position of piece we're looking at (changes every
-     *                recursive call by 1 in the direction of dir)
+     * @param currPos position to count from
      * @param dir direction to find adjacent pieces
-     * @param num the number of adjacent pieces, this is returned
-     * @return  We return num (see parameter). 0 is returned if there is
+     * @param num the number of adjacent pieces already counted before currPos
+     * @return  num plus the pieces found. 0 is returned if there is
      *          no pieces next to the piece this was called on
      */
-    public int detAdjacentPieceLength(Round round, Coord currPos, String dir, int num) {
-        if (!round.board.isPieceAtOffset(pos, dir, num + 1)) return num;
-        else return detAdjacentPieceLength(round, round.board.round.determineOffset(currPos, dir, 1), dir, ++num);
+    public int detAdjacentPieceLength(Round round, Coord currPos, Direction dir, int num) {
+        return num + round.board.pushChainLength(currPos, dir);
     }
 
     /**
@@ -124,11 +138,11 @@ public class Piece implements Serializable{
      */
     @SuppressWarnings("JavaDoc")
     private void addToPlayersBoardPieces(int x, int y) {
-        this.pos = new Coord(x, y);
-        player.piecesOnBoard.add(this);
+        addToPlayersBoardPieces(new Coord(x, y));
     }
     public void addToPlayersBoardPieces(Coord pos) {
-        addToPlayersBoardPieces(pos.getX(), pos.getY());
+        this.pos = pos; // Coords are immutable so the spawn point can be shared
+        player.piecesOnBoard.add(this);
     }
 
 
@@ -142,15 +156,58 @@ public class Piece implements Serializable{
         pos = new Coord(x, y);
     }
     public void setPos(Coord pos) {
-        setPos(pos.getX(), pos.getY());
+        this.pos = pos; // Coords are immutable so can be shared
+    }
+
+    public Abilities ability(Direction dir) {
+        return LayoutTable.ability(layoutCode, dir);
+    }
+
+    /**
+     * @return number of 90 degree clockwise turns from the layout the piece started
+     *         with, the smallest number if more than one turn gives the same layout
+     */
+    int orientation() {
+        return orientation;
+    }
+
+    /**
+     * @return orientation() of this piece turned 180 degrees, see Symmetry
+     */
+    int mirroredOrientation() {
+        return (orientation + 2) % period;
+    }
+
+    int getStartLayoutCode() {
+        return startLayoutCode;
     }
 
+    int getLayoutCode() {
+        return layoutCode;
+    }
+
+    void setLayoutCode(int layoutCode) {
+        this.layoutCode = layoutCode;
+        this.layout = LayoutTable.asMap(layoutCode);
+        orientation = 0;
+        while (orientation < 3 && LayoutTable.rotateCW(startLayoutCode, orientation) != layoutCode) orientation++;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        layout = LayoutTable.asMap(layoutCode);
+    }
+
+    /**
+     * @return true once the piece has been moved, rotated etc this turn,
+     *         kept by its player, see Player.getTurnState()
+     */
     public boolean beenAlteredThisTurn() {
-        return beenAltered;
+        return player.isAltered(this);
     }
 
     public void setAlteredThisTurn(boolean b) {
-        beenAltered = b;
+        player.setAltered(this, b);
     }
 
     public String getName() {
@@ -158,30 +215,35 @@ public class Piece implements Serializable{
     }
 
 
-    // Drawing methods - Used by BoardView
-    public void drawTopRow() {
-        // Top Row
-        if (layout.get(Direction.NORTH) ==  Abilities.SWORD) {System.out.printf("   |   ");}
-        else if (layout.get(Direction.NORTH) == Abilities.SHIELD) {System.out.printf("   #   ");}
-        else if (layout.get(Direction.NORTH) ==  Abilities.NOTHING) {System.out.printf("       ");}
-    }
-
-    public void drawMiddleRow() {
-        // Middle Row
-        if (layout.get(Direction.WEST) ==  Abilities.SWORD) {System.out.print(" -");}
-        else if (layout.get(Direction.WEST) == Abilities.SHIELD) {System.out.print(" #");}
-        else if (layout.get(Direction.WEST) ==  Abilities.NOTHING) {System.out.print("  ");}
+    // Drawing - Used by BoardView
+    // Glyphs for each side indexed by Abilities ordinal: SWORD, SHIELD, NOTHING
+    private static final String[] VERTICAL = {"   |   ", "   #   ", "       "};
+    private static final String[] LEFT = {" -", " #", "  "};
+    private static final String[] RIGHT = {"- ", "# ", "  "};
 
-        System.out.print("" + player.name + name);
+    // The 3 rows of 7 characters this piece is drawn as, for each of its 4 orientations
+    private final String[][] glyphs;
 
-        if (layout.get(Direction.EAST) ==  Abilities.SWORD) {System.out.print("- ");}
-        else if (layout.get(Direction.EAST) == Abilities.SHIELD) {System.out.print("# ");}
-        else if (layout.get(Direction.EAST) ==  Abilities.NOTHING) {System.out.print("  ");}
+    private String[][] buildGlyphs() {
+        String[][] rows = new String[4][];
+        for (int i = 0; i < 4; i++) {
+            int code = LayoutTable.rotateCW(startLayoutCode, i);
+            rows[i] = new String[] {
+                    VERTICAL[LayoutTable.ability(code, Direction.NORTH).ordinal()],
+                    LEFT[LayoutTable.ability(code, Direction.WEST).ordinal()] + player.name + name +
+                            RIGHT[LayoutTable.ability(code, Direction.EAST).ordinal()],
+                    VERTICAL[LayoutTable.ability(code, Direction.SOUTH).ordinal()]
+            };
+        }
+        return rows;
     }
 
-    public void drawBottomRow() {
-        if (layout.get(Direction.SOUTH) ==  Abilities.SWORD) {System.out.print("   |   ");}
-        else if (layout.get(Direction.SOUTH) == Abilities.SHIELD) {System.out.print("   #   ");}
-        else if (layout.get(Direction.SOUTH) ==  Abilities.NOTHING) {System.out.print("       ");}
+    /**
+     * Returns one row of how the piece is drawn in its current orientation
+     * @param row 0 for the top row, 1 for the middle row and 2 for the bottom row
+     * @return 7 characters, e.g. " -P1B# " for the middle row
+     */
+    public String getGlyphRow(int row) {
+        return glyphs[orientation][row];
     }
-}
\ No newline at end of file
+}
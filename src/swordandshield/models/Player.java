@@ -1,10 +1,22 @@
 package swordandshield.models;
 
+import swordandshield.exceptions.PlayerException;
+
 import java.io.Serializable;
 import java.util.*;
 
 /**
- * Represents a unique player of Sword and Shields
+ * Represents a unique player of Sword and Shields.
+ *
+ * Every piece of the player is kept in a 24 slot array by letter, and which
+ * zone each is in (available, on the board or in the cemetery) is one bit
+ * per letter in a mask per zone. Finding a piece by letter, moving it to
+ * another zone and counting a zone are all O(1). piecesAvailable,
+ * piecesOnBoard and piecesCemetery are views of the masks, always in
+ * letter order, and adding a piece to one takes it out of the others.
+ *
+ * The player's part of the Zobrist key of the game for the zone of each
+ * piece is updated whenever a mask changes, see Zobrist.
  */
 public class Player implements Serializable {
 
@@ -15,36 +27,200 @@ public class Player implements Serializable {
 
     public boolean lost = false;
 
-    public boolean pieceCreated;
-    private boolean pieceDestroyed;
+    // Position of every piece in a cemetery
+    static final Coord CEMETERY_POS = new Coord(-1, -1);
+
 
     public enum ColorIdentity {
         YELLOW,
         GREEN
     }
 
-    public final List<Piece> piecesCemetery = new ArrayList<>();
-    public List<Piece> piecesAvailable = new ArrayList<>();
-    public final List<Piece> piecesOnBoard = new ArrayList<>();
+    public enum Zone {
+        AVAILABLE,
+        BOARD,
+        CEMETERY
+    }
+
+    private static final Zone[] ZONES = Zone.values();
+    private static final ColorIdentity[] COLORS = ColorIdentity.values();
+
+    // Letters A - X
+    static final int MAX_PIECES = 24;
+
+    // Every piece of this player by letter, and a bit per letter for the pieces in each zone
+    private final Piece[] pieces = new Piece[MAX_PIECES];
+    private final int[] zones = new int[Zone.values().length];
+    // Bits of every letter this player has a piece of, and the id of its piece A
+    private int allPieces;
+    private final int firstId;
+
+    // What has happened this turn: a bit per letter for the pieces that have been
+    // moved or rotated, and whether a piece has been created or destroyed
+    private static final int ALTERED = (1 << MAX_PIECES) - 1;
+    private static final int CREATED = 1 << MAX_PIECES;
+    private static final int DESTROYED = 1 << (MAX_PIECES + 1);
+    private int turn;
+
+    // Zobrist key of the zone of every piece
+    private long zoneKey;
+
+    public final List<Piece> piecesCemetery = new ZoneList(Zone.CEMETERY);
+    public final List<Piece> piecesAvailable = new ZoneList(Zone.AVAILABLE);
+    public final List<Piece> piecesOnBoard = new ZoneList(Zone.BOARD);
 
     public Player(String name, ColorIdentity token, Coord spawnPoint, Coord homeFace) {
         this.name = name; // Either P1 or P2
         this.token = token;
+        this.firstId = token.ordinal() * MAX_PIECES + 1;
         this.spawnPoint = spawnPoint;
         this.homeFace = homeFace;
     }
 
+    /**
+     * Gives the player a new set of pieces, all of them available
+     * @param newPieces pieces of this player, with different letters
+     */
+    public void setPieces(List<Piece> newPieces) {
+        Arrays.fill(pieces, null);
+        Arrays.fill(zones, 0);
+        zoneKey = 0;
+        turn = 0;
+        allPieces = 0;
+        for (Piece piece : newPieces) {
+            pieces[letterOf(piece)] = piece;
+            allPieces |= 1 << letterOf(piece);
+        }
+        setZone(Zone.AVAILABLE.ordinal(), allPieces);
+    }
+
+    /**
+     * Puts every piece back in the available pieces, e.g. for a new game.
+     * Only the zones change, not the pieces themselves.
+     */
+    void makeAllAvailable() {
+        setZone(Zone.BOARD.ordinal(), 0);
+        setZone(Zone.CEMETERY.ordinal(), 0);
+        setZone(Zone.AVAILABLE.ordinal(), allPieces);
+    }
+
+    /**
+     * Puts each of this player's pieces in the zone the piece with the same
+     * letter of another player is in. Only the zones change, not the pieces.
+     * @param other player with the same letters of pieces
+     */
+    void copyZones(Player other) {
+        for (int zone = 0; zone < zones.length; zone++) setZone(zone, other.zones[zone]);
+    }
+
+    /**
+     * Changes the mask of a zone, updating the zone key for every piece that came or went
+     */
+    private void setZone(int zone, int mask) {
+        for (int bits = zones[zone] ^ mask; bits != 0; bits &= bits - 1) {
+            zoneKey ^= Zobrist.zone(firstId + Integer.numberOfTrailingZeros(bits), zone);
+        }
+        zones[zone] = mask;
+    }
+
+    /**
+     * @return this player's part of the Zobrist key of the game, see Round.getZobristKey()
+     */
+    long getZobristKey() {
+        return zoneKey ^ Zobrist.turn(token, turn);
+    }
+
+    /**
+     * @return this player's part of Round.getMirroredZobristKey(), i.e. as if
+     *         its pieces and turn flags belonged to the other colour
+     */
+    long getMirroredZobristKey() {
+        long key = Zobrist.turn(COLORS[token.ordinal() ^ 1], turn);
+        for (int zone = 0; zone < zones.length; zone++) {
+            for (int bits = zones[zone]; bits != 0; bits &= bits - 1) {
+                key ^= Zobrist.zone(Symmetry.mirrorId(pieces[Integer.numberOfTrailingZeros(bits)].id), zone);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Puts one of this player's pieces in a zone, taking it out of whichever zone it was in
+     * @param piece piece of this player
+     * @param zone zone to put it in, null to take it out of every zone
+     */
+    public void moveTo(Piece piece, Zone zone) {
+        int letter = letterOf(piece);
+        if (pieces[letter] != piece) throw new PlayerException("Piece " + piece.getName() + " doesn't belong to " + name);
+        int bit = 1 << letter;
+        for (int z = 0; z < zones.length; z++) {
+            if ((zones[z] & bit) != 0) setZone(z, zones[z] & ~bit);
+        }
+        if (zone != null) setZone(zone.ordinal(), zones[zone.ordinal()] | bit);
+    }
+
+    /**
+     * @param piece any piece
+     * @return the zone the piece is in, null if it isn't in any zone of this player
+     */
+    public Zone zoneOf(Piece piece) {
+        int letter = letterOf(piece);
+        if (pieces[letter] != piece) return null;
+        for (Zone zone : ZONES) {
+            if ((zones[zone.ordinal()] & (1 << letter)) != 0) return zone;
+        }
+        return null;
+    }
+
+    /**
+     * Finds a piece by letter in a zone without printing anything if it isn't there
+     * @param zone zone to look in
+     * @param name A-X letter of the piece, any case
+     * @return the piece or null if it isn't in the zone
+     */
+    public Piece getPiece(Zone zone, char name) {
+        int letter = Character.toUpperCase(name) - 'A';
+        if (letter < 0 || letter >= MAX_PIECES || (zones[zone.ordinal()] & (1 << letter)) == 0) return null;
+        return pieces[letter];
+    }
+
+    /**
+     * @return a bit per letter (A is bit 0) of the pieces in a zone
+     */
+    int zoneMask(Zone zone) {
+        return zones[zone.ordinal()];
+    }
+
+    /**
+     * @param letter 0 - 23 for A - X
+     * @return this player's piece of that letter, whatever zone it's in
+     */
+    Piece pieceOf(int letter) {
+        return pieces[letter];
+    }
+
+    /**
+     * @return number of pieces in the zone
+     */
+    public int count(Zone zone) {
+        return Integer.bitCount(zones[zone.ordinal()]);
+    }
+
+    static int letterOf(Piece piece) {
+        return piece.letter;
+    }
+
     /**
      * Given a piece, it will move this from the player's pieces that are
-     * on the board to the players cemetery
+     * on the board to the players cemetery. It doesn't set anyone's
+     * destroyed flag, that belongs to whoever destroyed it, which is
+     * not always the owner.
      * @param piece
      */
     @SuppressWarnings("JavaDoc")
     public void moveToCemetery(Piece piece) {
-        setPieceDestroyed(true);
-        getPiecesOnBoard().remove(piece);
-        piece.setPos(-1, -1);
-        getPiecesCemetery().add(piece);
+        moveTo(piece, Zone.CEMETERY);
+        piece.setPos(CEMETERY_POS);
     }
 
 
@@ -55,13 +231,9 @@ public class Player implements Serializable {
      * @return Piece or null dependending if piece was found
      */
     public Piece getAvailablePieceByName(String name) {
-        for (Piece p: piecesAvailable) {
-            if (p.getName().equalsIgnoreCase(name)) {
-                return p;
-            }
-        }
-        System.out.println("No piece available with that name");
-        return null;
+        Piece p = getPiece(Zone.AVAILABLE, name);
+        if (p == null) System.out.println("No piece available with that name");
+        return p;
     }
 
     /**
@@ -71,13 +243,9 @@ public class Player implements Serializable {
      * @return Piece or null dependending if piece was found
      */
     public Piece getBoardPieceByName(String name) {
-        for (Piece p: piecesOnBoard) {
-            if (p.getName().equalsIgnoreCase(name)) {
-                return p;
-            }
-        }
-        System.out.println("No piece on board with that name");
-        return null;
+        Piece p = getPiece(Zone.BOARD, name);
+        if (p == null) System.out.println("No piece on board with that name");
+        return p;
     }
 
     /**
@@ -87,12 +255,38 @@ public class Player implements Serializable {
      * @return Piece or null dependending if piece was found
      */
     public Piece getCemeteryPieceByName(String name) {
-        for (Piece p: piecesCemetery) {
+        Piece p = getPiece(Zone.CEMETERY, name);
+        if (p == null) System.out.println("No piece in cemetery with that name");
+        return p;
+    }
+
+    private Piece getPiece(Zone zone, String name) {
+        return name.length() == 1 ? getPiece(zone, name.charAt(0)) : null;
+    }
+
+    /**
+     * Gets a piece by it's name (A-Z) from a list of pieces without
+     * printing anything if it isn't there
+     * @param pieces one of this player's lists of pieces
+     * @param name A-Z letter of the piece to find
+     * @return Piece or null dependending if piece was found
+     */
+    static Piece findPieceByName(List<Piece> pieces, String name) {
+        for (Piece p: pieces) {
             if (p.getName().equalsIgnoreCase(name)) {
                 return p;
             }
         }
-        System.out.println("No piece in cemetery with that name");
+        return null;
+    }
+    static Piece findPieceByName(List<Piece> pieces, char name) {
+        char upper = Character.toUpperCase(name);
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece p = pieces.get(i);
+            if (p.getName().charAt(0) == upper) {
+                return p;
+            }
+        }
         return null;
     }
 
@@ -103,13 +297,7 @@ public class Player implements Serializable {
      * @return alterations left
      */
     int numMovesInTurnLeft() {
-        int count = 0;
-        for (Piece p : getPiecesOnBoard()) {
-            if (!p.beenAlteredThisTurn()) {
-                count++;
-            }
-        }
-        return count;
+        return Integer.bitCount(zones[Zone.BOARD.ordinal()] & ~turn & ALTERED);
     }
 
     /**
@@ -118,7 +306,7 @@ public class Player implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isEndOfTurn() {
-        return numMovesInTurnLeft() == 0;
+        return (zones[Zone.BOARD.ordinal()] & ~turn & ALTERED) == 0;
     }
 
     /**
@@ -128,7 +316,7 @@ public class Player implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isStartOfTurn() {
-        return numMovesInTurnLeft() == piecesOnBoard.size() && !pieceCreated && !pieceDestroyed;
+        return (turn & (zones[Zone.BOARD.ordinal()] | CREATED | DESTROYED)) == 0;
     }
 
     /**
@@ -137,7 +325,7 @@ public class Player implements Serializable {
      */
     @SuppressWarnings("JavaDoc")
     public boolean isFirstTurn() {
-        return piecesOnBoard.size() == 0;
+        return zones[Zone.BOARD.ordinal()] == 0;
     }
 
     /**
@@ -146,11 +334,41 @@ public class Player implements Serializable {
      * he can play the correct amount of pieces
      */
     public void reset() {
-        for (Piece p : piecesOnBoard) {
-            p.setAlteredThisTurn(false);
-        }
-        pieceCreated = false;
-        pieceDestroyed = false;
+        turn = 0;
+    }
+
+    /**
+     * @return whether one of this player's pieces has been moved or rotated this turn
+     */
+    boolean isAltered(Piece piece) {
+        return (turn & (1 << letterOf(piece))) != 0;
+    }
+
+    void setAltered(Piece piece, boolean altered) {
+        if (altered) turn |= 1 << letterOf(piece);
+        else turn &= ~(1 << letterOf(piece));
+    }
+
+    /**
+     * Everything that has happened this turn packed into an int, e.g.
+     * to put it back after searching ahead. Only means anything to
+     * setTurnState() of a player with the same pieces.
+     */
+    public int getTurnState() {
+        return turn;
+    }
+
+    public void setTurnState(int turn) {
+        this.turn = turn;
+    }
+
+    public boolean isPieceCreated() {
+        return (turn & CREATED) != 0;
+    }
+
+    public void setPieceCreated(boolean pieceCreated) {
+        if (pieceCreated) turn |= CREATED;
+        else turn &= ~CREATED;
     }
 
     public List<Piece> getPiecesCemetery() {return piecesCemetery;}
@@ -160,7 +378,105 @@ public class Player implements Serializable {
     public List<Piece> getPiecesOnBoard() {
         return piecesOnBoard;
     }
+    public boolean isPieceDestroyed() {
+        return (turn & DESTROYED) != 0;
+    }
     public void setPieceDestroyed(boolean pieceDestroyed) {
-        this.pieceDestroyed = pieceDestroyed;
+        if (pieceDestroyed) turn |= DESTROYED;
+        else turn &= ~DESTROYED;
+    }
+
+    /**
+     * Read only in letter order apart from add and remove, which move pieces
+     * between zones. Lookups go through the mask, get() through an array of
+     * the zone's pieces that is rebuilt whenever the zone has changed.
+     */
+    private class ZoneList extends AbstractList<Piece> implements Serializable {
+        private final int zone;
+
+        private transient Piece[] order;
+        private transient int orderMask;
+
+        ZoneList(Zone zone) {
+            this.zone = zone.ordinal();
+        }
+
+        @Override
+        public Piece get(int index) {
+            int mask = zones[zone];
+            if (index < 0 || index >= Integer.bitCount(mask)) throw new IndexOutOfBoundsException("Index: " + index);
+            if (order == null || orderMask != mask) {
+                if (order == null) order = new Piece[MAX_PIECES];
+                int n = 0;
+                for (int bits = mask; bits != 0; bits &= bits - 1) {
+                    order[n++] = pieces[Integer.numberOfTrailingZeros(bits)];
+                }
+                orderMask = mask;
+            }
+            return order[index];
+        }
+
+        @Override
+        public int size() {
+            return Integer.bitCount(zones[zone]);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof Piece)) return -1;
+            int letter = letterOf((Piece) o);
+            int bit = 1 << letter;
+            if (pieces[letter] != o || (zones[zone] & bit) == 0) return -1;
+            return Integer.bitCount(zones[zone] & (bit - 1));
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean add(Piece piece) {
+            moveTo(piece, ZONES[zone]);
+            return true;
+        }
+
+        /**
+         * The zone is always in letter order, so a piece can only be added at
+         * the index its letter puts it at, which is what add(piece) does
+         * @throws UnsupportedOperationException if index isn't where the piece goes
+         */
+        @Override
+        public void add(int index, Piece piece) {
+            int below = zones[zone] & ((1 << letterOf(piece)) - 1);
+            if (index != Integer.bitCount(below)) {
+                throw new UnsupportedOperationException("Piece " + piece.getName() + " can only go at index " + Integer.bitCount(below));
+            }
+            add(piece);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) return false;
+            setZone(zone, zones[zone] & ~(1 << letterOf((Piece) o)));
+            return true;
+        }
+
+        @Override
+        public Piece remove(int index) {
+            Piece piece = get(index);
+            remove(piece);
+            return piece;
+        }
+
+        @Override
+        public void clear() {
+            setZone(zone, 0);
+        }
     }
-}
\ No newline at end of file
+}
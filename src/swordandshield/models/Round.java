@@ -4,13 +4,14 @@ import swordandshield.controllers.InputController;
 import swordandshield.controllers.parsingController.nodes.PassNode;
 import swordandshield.exceptions.PlayerException;
 import swordandshield.controllers.parsingController.nodes._ParseNode;
-import swordandshield.startup.DataLoader;
+import swordandshield.startup.PieceCatalogue;
 import swordandshield.views.BoardView;
 import swordandshield.views.UserIOView;
 
 import javax.swing.undo.CannotUndoException;
 import java.io.*;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
@@ -25,7 +26,7 @@ public class Round implements Serializable {
 
     public STATE state;
 
-    public Stack<Round> prevMoves = new Stack<>();
+    public Stack<UndoRecord> prevMoves = new Stack<>();
 
     public Board board;
     private BoardView boardView;
@@ -35,42 +36,180 @@ public class Round implements Serializable {
     public List<Player> players = new ArrayList<>();
     public Player currPlayer;
 
+    // Turn off to stop commands leaving undo records, e.g. when simulating games
+    public boolean recordUndo = true;
+
+    // Reprint the whole board every time rather than only what changed, see BoardView
+    private boolean fullRedraw;
+
+    // Bits of the turn state index into ALLOWED, see allowedActions()
+    private static final int START_OF_TURN = 1;
+    private static final int FIRST_TURN = 2;
+    private static final int END_OF_TURN = 4;
+    private static final int SPAWN_TAKEN = 8;
+    private static final int[] ALLOWED = buildAllowed();
+
     /**
      * Determines the coordinate of an offset away from an original position coordinate
      *
      * @param origPos the original coordinate you want to calculate the offset from
-     * @param dir what direction (up, down, left, right)
+     * @param dir what direction
      * @param offset how far away you want the offset from the original position
      * @return Coordinate for offset from an original position
      */
-    Coord determineOffset(Coord origPos, String dir, int offset) {
-        Coord pos;
-        if (dir.equalsIgnoreCase("up")) pos = new Coord(origPos.getX(), origPos.getY() - offset);
-        else if (dir.equalsIgnoreCase("down")) pos = new Coord(origPos.getX(), origPos.getY() + offset);
-        else if (dir.equalsIgnoreCase("left")) pos = new Coord(origPos.getX() - offset, origPos.getY());
-        else if (dir.equalsIgnoreCase("right")) pos = new Coord(origPos.getX() + offset, origPos.getY());
-        else {
-            System.out.println("Direction not recognised");
-            return null;
+    Coord determineOffset(Coord origPos, Piece.Direction dir, int offset) {
+        return new Coord(origPos.getX() + dir.dx * offset, origPos.getY() + dir.dy * offset);
+    }
+
+    /**
+     * Creates a piece from the current player's available pieces at their
+     * spawn point, rotated clockwise numRots times, then resolves any
+     * reactions. See Board.resolveReactions()
+     *
+     * @param p piece to create, must be one of the current players available pieces
+     * @param numRots number of 90 degree rotations
+     * @return false if the spawn point is taken and nothing was created
+     */
+    public boolean createPiece(Piece p, int numRots) {
+        if (board.isPieceAtPos(currPlayer.spawnPoint)) return false;
+
+        UndoRecord record = startUndoRecord();
+        if (record != null) record.save(this, p);
+
+        p.addToPlayersBoardPieces(currPlayer.spawnPoint);
+        p.rotatePieceCW(numRots);
+        board.putPieceOnGrid(p);
+        currPlayer.setPieceCreated(true);
+        board.resolveReactions(record);
+        return true;
+    }
+
+    /**
+     * Moves a piece on the board one square in a direction, pushing
+     * any pieces in the way along with it, then resolves any reactions
+     *
+     * @param p piece to move, must be one of the current players pieces on the board
+     * @param dir direction to move in, NORTH is up
+     * @return false if the piece has already been moved/rotated this turn
+     */
+    public boolean movePiece(Piece p, Piece.Direction dir) {
+        if (p.beenAlteredThisTurn()) return false;
+        UndoRecord record = startUndoRecord();
+        if (record != null) {
+            int adjacentLength = p.detAdjacentPieceLength(this, p.getPos(), dir, 0);
+            record.savePushChain(this, p.getPos(), dir, adjacentLength);
+        }
+
+        board.push(p, dir);
+        p.setAlteredThisTurn(true);
+        board.resolveReactions(record);
+        return true;
+    }
+
+    /**
+     * Rotates a piece on the board clockwise numRots times, then resolves any reactions
+     *
+     * @param p piece to rotate, must be one of the current players pieces on the board
+     * @param numRots number of 90 degree rotations
+     * @return false if the player can't rotate now, e.g. every piece on the
+     *         board has already been moved/rotated this turn. A piece that has
+     *         been can still be rotated while others haven't.
+     */
+    public boolean rotatePiece(Piece p, int numRots) {
+        if ((allowedActions() & 1 << MoveGenerator.ROTATE) == 0) return false;
+
+        UndoRecord record = startUndoRecord();
+        if (record != null) record.save(this, p);
+
+        p.rotatePieceCW(numRots);
+        board.pieceTurned(p);
+        p.setAlteredThisTurn(true);
+        board.resolveReactions(record);
+        return true;
+    }
+
+    /**
+     * Reverts the last create/move/rotate of this turn
+     *
+     * @return false if it's the start of the turn or there's nothing to undo
+     */
+    public boolean undo() {
+        if (currPlayer.isStartOfTurn() || prevMoves.isEmpty()) return false;
+        prevMoves.pop().revert(this);
+        return true;
+    }
+
+    /**
+     * Works out which kinds of action the current player can take now from
+     * the state of their turn, i.e. a table lookup, nothing is allocated.
+     * Some of them may still fail, e.g. undo when there is nothing to undo.
+     * @return a bit for each allowed action type, 1 << MoveGenerator.PASS etc
+     */
+    public int allowedActions() {
+        int state = 0;
+        if (currPlayer.isStartOfTurn()) state |= START_OF_TURN;
+        if (currPlayer.isFirstTurn()) state |= FIRST_TURN;
+        if (currPlayer.isEndOfTurn()) state |= END_OF_TURN;
+        if (board.isPieceAtPos(currPlayer.spawnPoint)) state |= SPAWN_TAKEN;
+        return ALLOWED[state];
+    }
+
+    private static int[] buildAllowed() {
+        int pass = 1 << MoveGenerator.PASS;
+        int create = 1 << MoveGenerator.CREATE;
+        int alter = 1 << MoveGenerator.MOVE | 1 << MoveGenerator.ROTATE;
+        int undo = 1 << MoveGenerator.UNDO;
+
+        int[] allowed = new int[16];
+        for (int state = 0; state < allowed.length; state++) {
+            if ((state & START_OF_TURN) != 0) {
+                if ((state & FIRST_TURN) != 0) allowed[state] = pass | create;
+                else if ((state & SPAWN_TAKEN) == 0) allowed[state] = pass | create | alter | undo;
+                else allowed[state] = pass | alter | undo;
+            }
+            else if ((state & END_OF_TURN) != 0) allowed[state] = pass | undo;
+            else allowed[state] = pass | alter | undo;
+        }
+        return allowed;
+    }
+
+    /**
+     * Pushes a new undo record for the command about to be executed
+     * @return the record, or null if undo records are turned off
+     */
+    private UndoRecord startUndoRecord() {
+        if (!recordUndo) return null;
+        return prevMoves.push(new UndoRecord(this));
+    }
+
+    /**
+     * Identifies the position with a 64 bit Zobrist key: the pieces on the
+     * board with their cells and orientations, the zone of every piece, the
+     * per turn flags of the players and whose turn it is. The board and the
+     * players keep their parts up to date as the game is played, so this is
+     * a few XORs. Positions with the same key are the same position but for
+     * the odd collision, see Zobrist.
+     * @return key of the current position
+     */
+    public long getZobristKey() {
+        long key = board.getZobristKey();
+        for (int i = 0; i < players.size(); i++) {
+            key ^= players.get(i).getZobristKey();
         }
-        return pos;
+        return currPlayer == players.get(0) ? key : key ^ Zobrist.SIDE;
     }
 
     /**
-     * Given the number of adjacent pieces to the original, it shifts the furthest
-     * piece away from the original piece by 1, and loops until it has moved itself
-     * by one.
-     *  @param adjacentLength number of pieces adjacent to start piece, can be 0
-     * @param origPos start piece location
-     * @param dir direction to move all pieces
-     * @param board
+     * The key getZobristKey() would give for the mirror image of the position:
+     * turned 180 degrees, with the colours swapped. See Symmetry.
+     * @return key of the mirror image of the current position
      */
-    public void moveAdjacentPieces(int adjacentLength, Coord origPos, String dir, Board board) {
-        while (adjacentLength >= 0) {
-            Piece p = board.getPieceAtOffset(origPos, dir, adjacentLength);
-            p.move(this, dir);
-            adjacentLength--;
+    public long getMirroredZobristKey() {
+        long key = board.getMirroredZobristKey();
+        for (int i = 0; i < players.size(); i++) {
+            key ^= players.get(i).getMirroredZobristKey();
         }
+        return currPlayer == players.get(0) ? key ^ Zobrist.SIDE : key;
     }
 
     public void gameOver(Player p) {
@@ -85,32 +224,74 @@ public class Round implements Serializable {
     }
 
     Round(STATE startState) {
+        this(startState, new InputController());
+    }
+
+    /**
+     * Starts a game where commands come from the given input controller,
+     * e.g. one that lets the computer play one of the players
+     */
+    Round(STATE startState, InputController inputController) {
+        this(startState, inputController, System.console() == null);
+    }
+
+    /**
+     * @param fullRedraw true to reprint the whole board after every command,
+     *                   false to only redraw what changed. Only works on
+     *                   terminals that understand ANSI escape codes.
+     */
+    Round(STATE startState, InputController inputController, boolean fullRedraw) {
         this.state = startState;
+        this.inputController = inputController;
+        this.fullRedraw = fullRedraw;
         setupGame();
-        prevMoves.push(deepClone());
 
         redraw();
         run();
     }
 
+    /**
+     * Creates a round with only the model, i.e. the board and the players.
+     * There are no views or input controller and no game loop is started
+     * so nothing is ever read from or written to the console.
+     * See GameEngine
+     */
+    Round() {
+        this(PieceCatalogue.getDefault());
+    }
+
+    /**
+     * Creates a round with only the model, see Round()
+     * @param pieces pieces both players are given
+     */
+    Round(PieceCatalogue pieces) {
+        this.state = STATE.RUNNING;
+        setupModel(pieces);
+    }
+
     void setupGame() {
-        board = new Board(this);
-        boardView = new BoardView(this);
+        boardView = new BoardView(this, fullRedraw);
         userIOView = new UserIOView();
-        inputController = new InputController();
-        createPlayers();
+        setupModel(PieceCatalogue.getDefault());
+    }
+
+    void setupModel(PieceCatalogue pieces) {
+        board = new Board(this);
+        createPlayers(pieces);
     }
 
     /**
      * Creates the players, adds them to the list of players,
-     * loads all their pieces and sets the current player
+     * gives them their pieces and sets the current player
+     * @param pieces pieces both players are given
      */
-    void createPlayers() {
+    void createPlayers(PieceCatalogue pieces) {
         players.add(new Player("P1", Player.ColorIdentity.YELLOW, new Coord(7, 7), new Coord(8, 8)));
         players.add(new Player("P2", Player.ColorIdentity.GREEN, new Coord(2, 2), new Coord(1, 1)));
         for (Player p: players) {
-            new DataLoader(p);
+            p.setPieces(pieces.createPieces(p));
         }
+        board.setupCells(players);
         currPlayer = players.get(0);
     }
 
@@ -125,10 +306,12 @@ public class Round implements Serializable {
             if ((command = inputController.takeTurn(this)) != null) {
                 command.execute(this);
             }
+            else if (inputController.isFinished()) break;
 
             if (command instanceof PassNode) changePlayer();
             redraw();
         }
+        boardView.restoreTerminal();
         if (state == STATE.GAMEOVER) {
             userIOView.gameOverText(this);
         }
@@ -151,9 +334,11 @@ public class Round implements Serializable {
     }
 
     /**
-     * Changes the player to the next player
+     * Changes the player to the next player. Undo records of the
+     * finished turn are thrown away as they can never be reverted.
      */
     public void changePlayer() {
+        prevMoves.clear(); // Can't undo past the start of a turn
         currPlayer.reset();
         currPlayer = getNextPlayer(currPlayer);
     }
@@ -176,8 +361,8 @@ public class Round implements Serializable {
 
     /**
      * Given a Round that should have been deep cloned, this will assign the fields of the
-     * current round to the fields of a previous state of the round. This is used for the
-     * undo functionality.
+     * current round to the fields of a previous state of the round. Undo no longer uses
+     * this, see UndoRecord.
      * @param previousRound
      */
     @SuppressWarnings("JavaDoc")
@@ -193,6 +378,7 @@ public class Round implements Serializable {
         if (fromFields.length != toFields.length) throw new CannotUndoException();
         else {
             for (Field field : fromFields){
+                if (Modifier.isStatic(field.getModifiers())) continue; // Shared by every round, and final
                 Field field1;
                 try {
                     field1 = copy2.getDeclaredField(field.getName());
@@ -207,8 +393,8 @@ public class Round implements Serializable {
 
     /**
      * Used to deep clone this round object, everything that implements serializable
-     * will also be cloned. These clones are statically added to a stack of Rounds in Game and
-     * popped in run() upon receival of a valid user input command.
+     * will also be cloned. This is expensive as it serializes the entire round, undo uses
+     * the much smaller UndoRecord instead.
      *
      * @return Round object with all pointers separate to current object
      */
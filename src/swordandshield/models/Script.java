@@ -0,0 +1,180 @@
+package swordandshield.models;
+
+import swordandshield.controllers.parsingController.Parser;
+import swordandshield.controllers.parsingController.nodes.PassNode;
+import swordandshield.controllers.parsingController.nodes._ParseNode;
+import swordandshield.views.BoardView;
+import swordandshield.views.UserIOView;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays games from files of commands, the same commands a player would
+ * type, e.g. to replay a recorded session to reproduce a bug. Every file
+ * is one game. No prompts are displayed and by default the board is never
+ * drawn, so a script runs as fast as the commands can be parsed and executed.
+ */
+public class Script {
+
+    // Commands between drawings of the board, 0 to never draw it
+    private final int renderEvery;
+    private final boolean recordUndo;
+
+    private final Summary summary = new Summary();
+
+    /**
+     * @param renderEvery draw the board after every this many commands, 0 to never draw it
+     * @param recordUndo true to keep undo records so scripts can use undo
+     */
+    public Script(int renderEvery, boolean recordUndo) {
+        this.renderEvery = renderEvery;
+        this.recordUndo = recordUndo;
+    }
+
+    /**
+     * Plays one game with commands read from in, until the game is over
+     * or there are no more commands. Any commands after the game is over
+     * are not read.
+     * @param in commands, one per line
+     * @return the round as it was at the end of the script
+     */
+    public Round play(Reader in) {
+        Round round = new Round();
+        round.recordUndo = recordUndo;
+        round.userIOView = new UserIOView();
+        BoardView boardView = renderEvery > 0 ? new BoardView(round, true) : null;
+        Parser parser = new Parser(in);
+
+        int commands = 0;
+        int rejected = 0;
+        int turns = 0;
+        while (round.state == Round.STATE.RUNNING) {
+            _ParseNode command = parser.parseCommand(round);
+            if (command == null) {
+                if (parser.isFinished()) break;
+                rejected++;
+                continue;
+            }
+            command.execute(round);
+            if (command instanceof PassNode) {
+                round.changePlayer();
+                turns++;
+            }
+            commands++;
+            if (boardView != null && commands % renderEvery == 0) boardView.draw();
+        }
+
+        Player winner = null;
+        for (Player p : round.players) {
+            if (p.lost) winner = round.getNextPlayer(p);
+        }
+        summary.add(winner, commands, rejected, turns);
+        return round;
+    }
+
+    public Summary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Totals of every game played by a script
+     */
+    public static class Summary {
+        private final long[] wins = new long[Player.ColorIdentity.values().length];
+        private long games;
+        private long unfinished;
+        private long commands;
+        private long rejected;
+        private long turns;
+
+        void add(Player winner, int gameCommands, int gameRejected, int gameTurns) {
+            games++;
+            commands += gameCommands;
+            rejected += gameRejected;
+            turns += gameTurns;
+            if (winner == null) unfinished++;
+            else wins[winner.token.ordinal()]++;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getUnfinished() {
+            return unfinished;
+        }
+
+        public long getWins(Player.ColorIdentity color) {
+            return wins[color.ordinal()];
+        }
+
+        /**
+         * @return commands that were executed, whether or not they changed anything
+         */
+        public long getCommands() {
+            return commands;
+        }
+
+        /**
+         * @return commands that were wrong or weren't allowed when they came up.
+         *         Lines that don't start with a command at all are skipped, not counted
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getTurns() {
+            return turns;
+        }
+    }
+
+    /**
+     * Usage: Game --script [--render N] [--undo] [file ...]
+     * Plays a game from each file, or a single game from standard in if there
+     * are no files, then prints a summary. --render N draws the board after
+     * every N commands, --undo keeps undo records so the scripts can use undo.
+     */
+    public static void main(String[] args) throws IOException {
+        int renderEvery = 0;
+        boolean recordUndo = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--render")) renderEvery = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--undo")) recordUndo = true;
+            else files.add(args[i]);
+        }
+
+        Script script = new Script(renderEvery, recordUndo);
+        long start = System.nanoTime();
+        if (files.isEmpty()) {
+            Round round = script.play(new InputStreamReader(System.in));
+            System.out.println("stdin: " + describe(round));
+        }
+        for (String file : files) {
+            try (Reader in = new FileReader(file)) {
+                Round round = script.play(in);
+                System.out.println(file + ": " + describe(round));
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        Summary summary = script.getSummary();
+        System.out.printf("%d games, %d unfinished", summary.getGames(), summary.getUnfinished());
+        for (Player.ColorIdentity color : Player.ColorIdentity.values()) {
+            System.out.printf(", %s won %d", color, summary.getWins(color));
+        }
+        System.out.println();
+        System.out.printf("%d commands (%d rejected) over %d turns in %.1f ms (%.0f commands/sec)%n",
+                summary.getCommands(), summary.getRejected(), summary.getTurns(), millis,
+                summary.getCommands() / (millis / 1000));
+    }
+
+    private static String describe(Round round) {
+        for (Player p : round.players) {
+            if (p.lost) return p.name + " (" + p.token + ") lost";
+        }
+        return "unfinished, " + round.currPlayer.name + " (" + round.currPlayer.token + ") to play";
+    }
+}
@@ -0,0 +1,234 @@
+package swordandshield.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Saves and loads a game in progress as a small fixed size block of bytes,
+ * rather than serializing the whole Round with its views, controller and
+ * undo records. Everything is big endian:
+ *
+ *  0   int magic "SSGS", short version, byte current player, byte reserved
+ *  8   long piece set fingerprint, see GameEngine.getPieceSetFingerprint()
+ *  16  one byte of turn flags per player (created, destroyed, lost), 2 reserved
+ *  20  4 bytes per piece by id: zone (available/board/cemetery) and altered
+ *      flag, a reserved byte, layout code, cell (y * 10 + x) if on the board
+ *
+ * Zones keep their pieces in letter order, so where a piece is in its zone
+ * isn't saved. Older saves have it in the reserved byte, which is ignored.
+ *
+ * Undo records aren't saved, so a loaded game can't undo what was done
+ * before it was saved.
+ */
+public final class Snapshot {
+
+    public static final int SIZE = 20 + 4 * Piece.MAX_ID;
+
+    private static final int MAGIC = 0x53534753;
+    private static final int VERSION = 1;
+
+    // Zones are Player.Zone ordinals
+    private static final Player.Zone[] ZONES = Player.Zone.values();
+    private static final int AVAILABLE = Player.Zone.AVAILABLE.ordinal();
+    private static final int ON_BOARD = Player.Zone.BOARD.ordinal();
+    private static final int CEMETERY = Player.Zone.CEMETERY.ordinal();
+    private static final int ALTERED = 4;
+
+    private static final int CREATED = 1;
+    private static final int DESTROYED = 2;
+    private static final int LOST = 4;
+
+    private static final int NO_CELL = 0xFF;
+
+    private Snapshot() {}
+
+    /**
+     * Writes the state of a round to the buffer's next SIZE bytes
+     * @param round round to save
+     * @param out buffer with at least SIZE bytes remaining
+     */
+    public static void save(Round round, ByteBuffer out) {
+        int start = out.position();
+        out.putInt(MAGIC);
+        out.putShort((short) VERSION);
+        out.put((byte) round.players.indexOf(round.currPlayer));
+        out.put((byte) 0);
+        out.putLong(fingerprint(piecesById(round)));
+        for (Player p : round.players) {
+            out.put((byte) ((p.isPieceCreated() ? CREATED : 0) | (p.isPieceDestroyed() ? DESTROYED : 0) | (p.lost ? LOST : 0)));
+        }
+        for (int i = out.position(); i < start + SIZE; i++) out.put(i, (byte) 0);
+
+        for (Player p : round.players) {
+            putPieces(out, start, p.piecesAvailable, AVAILABLE);
+            putPieces(out, start, p.piecesOnBoard, ON_BOARD);
+            putPieces(out, start, p.piecesCemetery, CEMETERY);
+        }
+        out.position(start + SIZE);
+    }
+
+    private static void putPieces(ByteBuffer out, int start, List<Piece> pieces, int zone) {
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            Coord pos = piece.getPos();
+            int at = start + 20 + 4 * (piece.id - 1);
+            out.put(at, (byte) (zone | (piece.beenAlteredThisTurn() ? ALTERED : 0)));
+            out.put(at + 2, (byte) piece.getLayoutCode());
+            out.put(at + 3, (byte) (zone == ON_BOARD ? pos.getY() * Board.SIZE + pos.getX() : NO_CELL));
+        }
+    }
+
+    /**
+     * Puts a round back to the state saved in the buffer's next SIZE bytes.
+     * The snapshot is checked in full first, so the round is left as it
+     * was if anything is wrong with it.
+     * @param round round to load into, must have been loaded from the same piece set
+     * @param in buffer with the snapshot at its position
+     * @throws IOException if it isn't a snapshot, is of a different piece set or is corrupt
+     */
+    public static void load(Round round, ByteBuffer in) throws IOException {
+        if (in.remaining() < SIZE) throw new IOException("Not a saved game");
+        int start = in.position();
+        if (in.getInt(start) != MAGIC) throw new IOException("Not a saved game");
+        if (in.getShort(start + 4) != VERSION) throw new IOException("Saved game is from a different version");
+        int currPlayer = in.get(start + 6);
+        if (currPlayer < 0 || currPlayer >= round.players.size()) throw new IOException("Saved game is corrupt");
+
+        Piece[] pieces = piecesById(round);
+        if (in.getLong(start + 8) != fingerprint(pieces)) throw new IOException("Saved game uses a different set of pieces");
+
+        // Check every piece first so nothing is changed unless it's all valid
+        boolean[] cells = new boolean[Board.NUM_CELLS];
+        for (int id = 1; id <= Piece.MAX_ID; id++) {
+            if (pieces[id] == null) continue;
+            int at = start + 20 + 4 * (id - 1);
+            int zone = in.get(at) & 3;
+            int cell = in.get(at + 3) & 0xFF;
+            if (zone > CEMETERY || !isRotationOf(pieces[id], in.get(at + 2) & 0xFF)) throw new IOException("Saved game is corrupt");
+            if (zone == ON_BOARD) {
+                if (cell >= Board.NUM_CELLS || !Board.isPlayable(cell) || cells[cell]) throw new IOException("Saved game is corrupt");
+                cells[cell] = true;
+            }
+        }
+
+        round.board.clear();
+        round.prevMoves.clear();
+        boolean over = false;
+        for (int owner = 0; owner < round.players.size(); owner++) {
+            Player p = round.players.get(owner);
+            int flags = in.get(start + 16 + owner);
+            p.setPieceCreated((flags & CREATED) != 0);
+            p.setPieceDestroyed((flags & DESTROYED) != 0);
+            p.lost = (flags & LOST) != 0;
+            over |= p.lost;
+        }
+        for (int id = 1; id <= Piece.MAX_ID; id++) {
+            Piece piece = pieces[id];
+            if (piece == null) continue;
+            int at = start + 20 + 4 * (id - 1);
+            int zone = in.get(at) & 3;
+            piece.setAlteredThisTurn((in.get(at) & ALTERED) != 0);
+            piece.setLayoutCode(in.get(at + 2) & 0xFF);
+            piece.player.moveTo(piece, ZONES[zone]);
+            if (zone == ON_BOARD) {
+                int cell = in.get(at + 3) & 0xFF;
+                piece.setPos(Board.coordOf(cell));
+                round.board.placeAt(piece, cell % Board.SIZE, cell / Board.SIZE);
+            }
+            else piece.setPos(zone == CEMETERY ? Player.CEMETERY_POS : null);
+        }
+        round.board.markSettled();
+        round.currPlayer = round.players.get(currPlayer);
+        if (over) round.state = Round.STATE.GAMEOVER;
+        else if (round.state == Round.STATE.GAMEOVER) round.state = Round.STATE.RUNNING;
+        in.position(start + SIZE);
+    }
+
+    /**
+     * @return true if the layout is the piece's starting layout turned 0 - 3 times,
+     *         anything else would leave it with no orientation to be drawn in
+     */
+    private static boolean isRotationOf(Piece piece, int layoutCode) {
+        for (int turns = 0; turns < 4; turns++) {
+            if (LayoutTable.rotateCW(piece.getStartLayoutCode(), turns) == layoutCode) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Turns the snapshot at the buffer's position into a snapshot of its
+     * mirror image, see Symmetry. Only for piece sets giving both players
+     * the same pieces, which is what Round sets up. Mirroring twice gives
+     * back the snapshot.
+     * @param snapshot buffer with the snapshot at its position, left there
+     */
+    public static void mirror(ByteBuffer snapshot) {
+        mirror(snapshot, snapshot.position());
+    }
+
+    static void mirror(ByteBuffer snapshot, int start) {
+        snapshot.put(start + 6, (byte) (1 - snapshot.get(start + 6)));
+        byte flags = snapshot.get(start + 16);
+        snapshot.put(start + 16, snapshot.get(start + 17));
+        snapshot.put(start + 17, flags);
+        for (int id = 1; id <= Player.MAX_PIECES; id++) {
+            int at = start + 20 + 4 * (id - 1);
+            int other = start + 20 + 4 * (Symmetry.mirrorId(id) - 1);
+            int piece = snapshot.getInt(at);
+            snapshot.putInt(at, mirrorPiece(snapshot.getInt(other)));
+            snapshot.putInt(other, mirrorPiece(piece));
+        }
+    }
+
+    // Turns a piece's 4 bytes around, the zone stays the same.
+    // Available pieces keep their layout as creating turns them from it.
+    private static int mirrorPiece(int piece) {
+        if ((piece >>> 24 & 3) == AVAILABLE) return piece;
+        int layoutCode = LayoutTable.rotateCW(piece >>> 8 & 0xFF, 2);
+        int cell = piece & 0xFF;
+        if (cell != NO_CELL) cell = Symmetry.mirrorCell(cell);
+        return piece & 0xFFFF0000 | layoutCode << 8 | cell;
+    }
+
+    /**
+     * Saves a round to a file, replacing the file if it exists
+     * @throws IOException if the file can't be written
+     */
+    public static void save(Round round, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        save(round, buffer);
+        Files.write(file.toPath(), buffer.array());
+    }
+
+    /**
+     * Loads a round from a file written by save()
+     * @throws IOException if the file can't be read or isn't a saved game of this piece set
+     */
+    public static void load(Round round, File file) throws IOException {
+        load(round, ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Every piece of the round wherever it is, indexed by id
+     */
+    private static Piece[] piecesById(Round round) {
+        Piece[] pieces = new Piece[Piece.MAX_ID + 1];
+        for (Player p : round.players) {
+            for (Piece piece : p.piecesAvailable) pieces[piece.id] = piece;
+            for (Piece piece : p.piecesOnBoard) pieces[piece.id] = piece;
+            for (Piece piece : p.piecesCemetery) pieces[piece.id] = piece;
+        }
+        return pieces;
+    }
+
+    private static long fingerprint(Piece[] pieces) {
+        int[] startLayouts = new int[pieces.length];
+        for (int id = 1; id < pieces.length; id++) {
+            if (pieces[id] != null) startLayouts[id] = pieces[id].getStartLayoutCode();
+        }
+        return GameEngine.pieceSetFingerprint(startLayouts);
+    }
+}
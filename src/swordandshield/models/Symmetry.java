@@ -0,0 +1,88 @@
+package swordandshield.models;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The board is the same turned 180 degrees: the corners, the faces at
+ * (1,1) and (8,8) and the spawns at (2,2) and (7,7) all swap over. Both
+ * players also get the same piece for every letter. So turning a position
+ * around and swapping the colours of every piece gives a position that
+ * plays out exactly the same with the players swapped, its mirror image.
+ *
+ * A position is canonical when it's the first player's turn. Any other
+ * position is put in canonical form by taking its mirror image, so each
+ * pair of mirror images is stored once, e.g. in a TranspositionTable, an
+ * opening book or an index of an archive, and what is learnt playing one
+ * colour applies to the other.
+ *
+ * In the mirror image, cell y * 10 + x becomes 99 - (y * 10 + x), piece
+ * id becomes the id of the same letter of the other colour and the pieces
+ * out of play or on the board are turned twice. Pieces still to be created
+ * aren't turned, the actions creating them are instead, see mirrorAction().
+ */
+public final class Symmetry {
+
+    private Symmetry() {}
+
+    /**
+     * @return true if the round's canonical form is its mirror image
+     */
+    public static boolean isFlipped(Round round) {
+        return round.currPlayer != round.players.get(0);
+    }
+
+    /**
+     * The same for a position and its mirror image, so either can be looked
+     * up with it. When the round is flipped the key of its mirror image is
+     * worked out from the pieces, see Round.getMirroredZobristKey(), rather
+     * than kept up to date, which would slow down every action.
+     * @return Zobrist key of the round's canonical form
+     */
+    public static long canonicalKey(Round round) {
+        return isFlipped(round) ? round.getMirroredZobristKey() : round.getZobristKey();
+    }
+
+    /**
+     * Writes the round's canonical form to the buffer's next Snapshot.SIZE
+     * bytes, loading it with Snapshot.load() gives the canonical round
+     * @param round round to save
+     * @param out buffer with at least Snapshot.SIZE bytes remaining
+     */
+    public static void canonicalSnapshot(Round round, ByteBuffer out) {
+        int start = out.position();
+        Snapshot.save(round, out);
+        if (isFlipped(round)) Snapshot.mirror(out, start);
+    }
+
+    /**
+     * Maps an action to the one doing the same in the mirror image. Moves
+     * go the opposite way and pieces are created turned twice more, rotates
+     * and passes are unchanged. Mapping twice gives back the action.
+     * @param action packed action, see MoveGenerator
+     * @return the action in the mirror image
+     */
+    public static int mirrorAction(int action) {
+        int type = MoveGenerator.type(action);
+        if (type != MoveGenerator.MOVE && type != MoveGenerator.CREATE) return action;
+        return MoveGenerator.encode(type, MoveGenerator.letter(action), (MoveGenerator.arg(action) + 2) & 3);
+    }
+
+    /**
+     * Maps an action of a round to the action of its canonical form, or
+     * back again, which is the same mapping
+     * @param round round the action is played in
+     * @param action packed action, see MoveGenerator
+     * @return the action in the round's canonical form
+     */
+    public static int canonicalAction(Round round, int action) {
+        return isFlipped(round) ? mirrorAction(action) : action;
+    }
+
+    static int mirrorCell(int cell) {
+        return Board.NUM_CELLS - 1 - cell;
+    }
+
+    static int mirrorId(int id) {
+        return id > Player.MAX_PIECES ? id - Player.MAX_PIECES : id + Player.MAX_PIECES;
+    }
+}
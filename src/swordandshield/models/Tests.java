@@ -3,10 +3,30 @@ package swordandshield.models;
 import org.junit.Before;
 import org.junit.Test;
 import swordandshield.controllers.InputController;
+import swordandshield.controllers.ai.AlphaBetaController;
+import swordandshield.controllers.ai.MctsController;
+import swordandshield.controllers.ai.TranspositionTable;
 import swordandshield.controllers.parsingController.Parser;
 import swordandshield.controllers.parsingController.nodes.*;
-
+import swordandshield.exceptions.PieceDataException;
+import swordandshield.simulation.GameRecordReader;
+import swordandshield.simulation.GameRecordWriter;
+import swordandshield.simulation.GameRecords;
+import swordandshield.simulation.Tournament;
+import swordandshield.startup.PieceCatalogue;
+import swordandshield.views.BoardView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.TestCase.*;
 
@@ -55,7 +75,7 @@ public class Tests {
         ic.runTestCommands(r);
         assertNotNull(r.board.getPieceAtPos(r.currPlayer.spawnPoint));
 
-        assertFalse(r.userIOView.outputPlayerChoices(r).contains(Parser.create));
+        assertFalse(r.userIOView.playerChoices(r).contains(Parser.create));
     }
 
     /**
@@ -68,13 +88,13 @@ public class Tests {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
         ic.runTestCommands(r);
         assertNotNull(r.board.getPieceAtPos(r.currPlayer.spawnPoint));
-        assertFalse(r.userIOView.outputPlayerChoices(r).contains(Parser.create));
+        assertFalse(r.userIOView.playerChoices(r).contains(Parser.create));
 
         r.changePlayer();
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
         ic.runTestCommands(r);
         assertNotNull(r.board.getPieceAtPos(r.currPlayer.spawnPoint));
-        assertFalse(r.userIOView.outputPlayerChoices(r).contains(Parser.create));
+        assertFalse(r.userIOView.playerChoices(r).contains(Parser.create));
     }
 
     /**
@@ -85,9 +105,9 @@ public class Tests {
     public void checkCreateNoUndo() {
         assertTrue(r.currPlayer.isStartOfTurn());
         assertTrue(r.currPlayer.isFirstTurn());
-        assertFalse(r.userIOView.outputPlayerChoices(r).contains(Parser.undo));
-        assertTrue(r.userIOView.outputPlayerChoices(r).contains(Parser.create));
-        assertTrue(r.userIOView.outputPlayerChoices(r).contains(Parser.pass));
+        assertFalse(r.userIOView.playerChoices(r).contains(Parser.undo));
+        assertTrue(r.userIOView.playerChoices(r).contains(Parser.create));
+        assertTrue(r.userIOView.playerChoices(r).contains(Parser.pass));
     }
 
     /**
@@ -96,11 +116,11 @@ public class Tests {
     @Test
     public void checkMoveDir_1() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "up"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.NORTH));
         ic.runTestCommands(r);
 
-        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "up", 1) != null);
-        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "up", 1).getName());
+        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.NORTH, 1) != null);
+        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.NORTH, 1).getName());
     }
 
     /**
@@ -109,11 +129,11 @@ public class Tests {
     @Test
     public void checkMoveDir_2() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "down"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.SOUTH));
         ic.runTestCommands(r);
 
-        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "down", 1) != null);
-        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "down", 1).getName());
+        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.SOUTH, 1) != null);
+        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.SOUTH, 1).getName());
     }
 
     /**
@@ -122,11 +142,11 @@ public class Tests {
     @Test
     public void checkMoveDir_3() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "left"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.WEST));
         ic.runTestCommands(r);
 
-        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "left", 1) != null);
-        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "left", 1).getName());
+        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.WEST, 1) != null);
+        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.WEST, 1).getName());
     }
 
     /**
@@ -135,11 +155,11 @@ public class Tests {
     @Test
     public void checkMoveDir_4() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
-        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "right", 1) != null);
-        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "right", 1).getName());
+        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.EAST, 1) != null);
+        assertEquals("B", r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.EAST, 1).getName());
     }
 
     /**
@@ -149,18 +169,18 @@ public class Tests {
     @Test
     public void checkMultipleMove() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "left"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.WEST));
         ic.runTestCommands(r);
 
         r.changePlayer();
         r.changePlayer();
 
         ic.testCommandsToExecute.add(new CreateNode("C", 0));
-        ic.testCommandsToExecute.add(new MoveNode("C", "left"));
+        ic.testCommandsToExecute.add(new MoveNode("C", Piece.Direction.WEST));
         ic.runTestCommands(r);
 
-        assertNotNull(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "left", 2));
-        assertNotNull(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "left", 1));
+        assertNotNull(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.WEST, 2));
+        assertNotNull(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.WEST, 1));
         assertNull(r.board.getPieceAtPos(r.currPlayer.spawnPoint));
 
         Piece first = r.currPlayer.getBoardPieceByName("B");
@@ -178,11 +198,11 @@ public class Tests {
     @Test
     public void checkCreateAndMovePiece() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "left"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.WEST));
         ic.runTestCommands(r);
 
         assertTrue(r.board.getPieceAtPos(r.currPlayer.spawnPoint) == null);
-        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, "left", 1) != null);
+        assertTrue(r.board.getPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.WEST, 1) != null);
         assertEquals(r.currPlayer.getBoardPieceByName("B").getPos(),
                     (new Coord(r.currPlayer.spawnPoint.getX() - 1, r.currPlayer.spawnPoint.getY())));
     }
@@ -240,20 +260,20 @@ public class Tests {
     @Test
     public void checkDeathProperties() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer(); // End of turn, pass
         r.changePlayer(); // Swap back to original player
 
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer();
         r.changePlayer();
 
         Coord posBeforeDeath = r.currPlayer.getBoardPieceByName("B").getPos();
-        ic.testCommandsToExecute.add(new MoveNode("B", "right")); // Should put it outside the board
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST)); // Should put it outside the board
         ic.runTestCommands(r);
 
         // Piece should be off the board at this point
@@ -274,19 +294,19 @@ public class Tests {
     @Test
     public void testOnlyPieceDies_1() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer(); // End of turn, pass
         r.changePlayer(); // Swap back to original player
 
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer();
         r.changePlayer();
 
-        ic.testCommandsToExecute.add(new MoveNode("B", "right")); // Should put it outside the board
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST)); // Should put it outside the board
         ic.runTestCommands(r);
 
         assertNotNull(r.currPlayer.getCemeteryPieceByName("B")); // Is in cemetery
@@ -330,35 +350,662 @@ public class Tests {
     @Test
     public void undoTest_2() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "left"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.WEST));
         ic.testCommandsToExecute.add(new UndoNode());
         ic.testCommandsToExecute.add(new UndoNode());
         ic.runTestCommands(r);
 
         assertFalse(r.board.isPieceAtPos(r.currPlayer.spawnPoint));
         assertTrue(r.currPlayer.isStartOfTurn());
-        assertFalse(r.userIOView.outputPlayerChoices(r).contains(Parser.undo));
+        assertFalse(r.userIOView.playerChoices(r).contains(Parser.undo));
     }
 
     @Test
     public void undoTest_3() {
         ic.testCommandsToExecute.add(new CreateNode("B", 0));
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer();
         r.changePlayer();
 
-        ic.testCommandsToExecute.add(new MoveNode("B", "right"));
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST));
         ic.runTestCommands(r);
 
         r.changePlayer();
         r.changePlayer();
 
-        ic.testCommandsToExecute.add(new MoveNode("B", "right")); // Should be dead
+        ic.testCommandsToExecute.add(new MoveNode("B", Piece.Direction.EAST)); // Should be dead
+        ic.testCommandsToExecute.add(new UndoNode());
+        ic.runTestCommands(r);
+
+        assertTrue(r.board.isPieceAtOffset(r.currPlayer.spawnPoint, Piece.Direction.EAST, 2));
+    }
+
+    /**
+     * Checks undoing a create puts the piece back at the same place in the
+     * available pieces and that undoing a rotate restores its layout
+     */
+    @Test
+    public void undoTest_4() {
+        Piece d = r.currPlayer.getAvailablePieceByName("D");
+        int indexBefore = r.currPlayer.getPiecesAvailable().indexOf(d);
+        Map<Piece.Direction, Piece.Abilities> layoutBefore = d.layout;
+
+        ic.testCommandsToExecute.add(new CreateNode("D", 0));
+        ic.testCommandsToExecute.add(new RotateNode("D", 90));
+        ic.testCommandsToExecute.add(new UndoNode());
+        ic.runTestCommands(r);
+        assertEquals(layoutBefore, d.layout);
+        assertFalse(d.beenAlteredThisTurn());
+
         ic.testCommandsToExecute.add(new UndoNode());
         ic.runTestCommands(r);
+        assertEquals(indexBefore, r.currPlayer.getPiecesAvailable().indexOf(d));
+        assertEquals(0, r.currPlayer.getPiecesOnBoard().size());
+        assertTrue(r.currPlayer.isStartOfTurn());
+    }
+
+    /**
+     * Checks the headless engine plays by the same rules as the parser,
+     * and that the same seed always plays out the same game
+     */
+    @Test
+    public void headlessEngine() {
+        GameEngine engine = new GameEngine();
+        engine.reset();
+        assertFalse(engine.move('B', Piece.Direction.NORTH));
+        assertTrue(engine.create('B', 0));
+        assertFalse(engine.create('C', 0));
+        assertTrue(engine.move('B', Piece.Direction.WEST));
+        assertFalse(engine.rotate('B', 90));
+        assertTrue(engine.pass());
+        assertEquals(Player.ColorIdentity.GREEN, engine.getCurrentPlayer().token);
+
+        Player first = engine.playRandomGame(new SplittableRandom(42), 200);
+        int turns = engine.getTurns();
+        Player second = engine.playRandomGame(new SplittableRandom(42), 200);
+        assertEquals(first, second);
+        assertEquals(turns, engine.getTurns());
+
+        // A piece can be rotated again while another piece can still be altered
+        engine.reset();
+        assertTrue(engine.create('B', 0) && engine.pass() && engine.pass());
+        assertTrue(engine.move('B', Piece.Direction.NORTH) && engine.pass() && engine.pass());
+        assertTrue(engine.move('B', Piece.Direction.NORTH) && engine.pass() && engine.pass());
+        assertTrue(engine.create('C', 0));
+        assertTrue(engine.rotate('B', 90) && engine.rotate('B', 90));
+        assertFalse(engine.move('B', Piece.Direction.NORTH));
+        assertTrue(engine.move('C', Piece.Direction.WEST));
+        assertFalse(engine.rotate('B', 90));
+    }
+
+    /**
+     * Checks the move generator only lists create and pass on the first turn
+     * and that every action it lists can actually be applied
+     */
+    @Test
+    public void moveGenerator() {
+        int[] buffer = new int[MoveGenerator.MAX_ACTIONS];
+        int n = MoveGenerator.generate(r, buffer);
+        assertEquals(1 + 24 * 4, n);
+
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int game = 0; game < 20; game++) {
+            engine.reset();
+            while (!engine.isGameOver() && engine.getTurns() < 100) {
+                n = engine.legalActions(buffer);
+                assertTrue(n > 0);
+                assertTrue(engine.apply(buffer[random.nextInt(n)]));
+            }
+        }
+    }
+
+    /**
+     * Checks pushing an opponent's piece keeps it in its owner's lists
+     * once, and that a piece pushed off the board goes to its owner's cemetery
+     */
+    @Test
+    public void pushOwnership() {
+        Round round = new Round();
+        Player yellow = round.currPlayer;
+        Player green = round.getNextPlayer(yellow);
+        Piece pusher = placeForTest(round, yellow, 'B', 7, 4);
+        Piece pushed = placeForTest(round, green, 'B', 8, 4);
+        Piece pushedOff = placeForTest(round, green, 'C', 9, 4);
+
+        assertTrue(round.movePiece(pusher, Piece.Direction.EAST));
+        assertEquals(new Coord(8, 4), pusher.getPos());
+        assertEquals(new Coord(9, 4), pushed.getPos());
+        assertEquals(1, green.getPiecesOnBoard().size());
+        assertTrue(green.getPiecesOnBoard().contains(pushed));
+        assertTrue(green.getPiecesCemetery().contains(pushedOff));
+        assertEquals(0, yellow.getPiecesCemetery().size());
+        assertTrue(yellow.isPieceDestroyed());
+        assertFalse(green.isPieceDestroyed());
+
+        round.changePlayer();
+        assertSame(green, round.currPlayer);
+        assertTrue(green.isStartOfTurn());
+    }
+
+    /**
+     * Checks two swords meeting destroy both pieces, a sword meeting a shield
+     * is pushed back, and undo puts back everything a reaction changed
+     */
+    @Test
+    public void reactions() {
+        Round round = new Round();
+        Player yellow = round.currPlayer;
+        Player green = round.getNextPlayer(yellow);
+        Piece swords = placeForTest(round, yellow, 'G', 4, 4); // Swords on every side
+        Piece otherSwords = placeForTest(round, green, 'G', 6, 4);
+        Piece shields = placeForTest(round, green, 'C', 6, 6); // Shields on every side
+
+        assertTrue(round.movePiece(swords, Piece.Direction.EAST));
+        assertTrue(yellow.getPiecesCemetery().contains(swords));
+        assertTrue(green.getPiecesCemetery().contains(otherSwords));
+        assertNull(round.board.getPieceAtPos(4, 5));
+        assertNull(round.board.getPieceAtPos(4, 6));
+        assertTrue(yellow.isPieceDestroyed());
+        assertFalse(green.isPieceDestroyed());
+        assertEquals(0, green.getTurnState());
+
+        assertTrue(round.undo());
+        assertEquals(new Coord(4, 4), swords.getPos());
+        assertEquals(new Coord(6, 4), otherSwords.getPos());
+        assertSame(otherSwords, round.board.getPieceAtPos(4, 6));
+        assertTrue(green.getPiecesOnBoard().contains(otherSwords));
+
+        Piece pushed = placeForTest(round, yellow, 'A', 8, 6); // Sword facing west
+        assertTrue(round.movePiece(pushed, Piece.Direction.WEST));
+        assertEquals(new Coord(8, 6), pushed.getPos());
+        assertEquals(new Coord(6, 6), shields.getPos());
+        assertNull(round.board.getPieceAtPos(6, 7));
+    }
+
+    /**
+     * Checks the alpha-beta search leaves the round exactly as it found it,
+     * mid turn and with undo records to keep, and picks a legal action
+     */
+    @Test
+    public void alphaBetaLeavesRound() {
+        GameEngine engine = new GameEngine();
+        engine.setRecordUndo(true);
+        SplittableRandom random = new SplittableRandom(7);
+        engine.reset();
+        for (int turn = 0; turn < 10; turn++) {
+            engine.playRandomTurn(random);
+            engine.pass();
+        }
+        engine.create('X', 90);
+        Round round = engine.getRound();
+        assertFalse(engine.isGameOver());
+        assertEquals(1, round.prevMoves.size());
+
+        ByteBuffer before = ByteBuffer.allocate(Snapshot.SIZE), after = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.save(round, before);
+        long key = round.getZobristKey();
+        AlphaBetaController ai = new AlphaBetaController(round.currPlayer.token, 200);
+        int action = ai.chooseAction(round);
+        Snapshot.save(round, after);
+        assertTrue(Arrays.equals(before.array(), after.array()));
+        assertEquals(key, round.getZobristKey());
+        assertEquals(1, round.prevMoves.size());
+        assertTrue(round.recordUndo);
+        assertTrue(isGenerated(round, action));
+    }
+
+    /**
+     * Checks MCTS picks an action the move generator lists, both on
+     * the first turn and mid game
+     */
+    @Test
+    public void mctsChoosesLegalAction() {
+        Round round = new Round();
+        MctsController yellowAi = new MctsController(Player.ColorIdentity.YELLOW, 100, 1, 1);
+        assertTrue(isGenerated(round, yellowAi.chooseAction(round)));
+
+        GameEngine engine = new GameEngine();
+        SplittableRandom random = new SplittableRandom(7);
+        engine.reset();
+        for (int turn = 0; turn < 10; turn++) {
+            engine.playRandomTurn(random);
+            engine.pass();
+        }
+        assertFalse(engine.isGameOver());
+        MctsController ai = new MctsController(engine.getCurrentPlayer().token, 100, 1, 1);
+        int action = ai.chooseAction(engine.getRound());
+        assertTrue(isGenerated(engine.getRound(), action));
+        assertTrue(ai.getLastPlayouts() > 0);
+    }
+
+    /**
+     * Checks a search on several threads leaves the round it was given
+     * exactly as it was, mid turn and with undo records to keep
+     */
+    @Test
+    public void mctsLeavesRound() {
+        GameEngine engine = new GameEngine();
+        engine.setRecordUndo(true);
+        SplittableRandom random = new SplittableRandom(7);
+        engine.reset();
+        for (int turn = 0; turn < 10; turn++) {
+            engine.playRandomTurn(random);
+            engine.pass();
+        }
+        engine.create('X', 90);
+        Round round = engine.getRound();
+
+        ByteBuffer before = ByteBuffer.allocate(Snapshot.SIZE), after = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.save(round, before);
+        long key = round.getZobristKey();
+        MctsController ai = new MctsController(round.currPlayer.token, 200, 4, 42);
+        int action = ai.chooseAction(round);
+        Snapshot.save(round, after);
+        assertTrue(Arrays.equals(before.array(), after.array()));
+        assertEquals(key, round.getZobristKey());
+        assertEquals(1, round.prevMoves.size());
+        assertTrue(isGenerated(round, action));
+    }
+
+    private static boolean isGenerated(Round round, int action) {
+        int[] buffer = new int[MoveGenerator.MAX_ACTIONS];
+        int n = MoveGenerator.generate(round, buffer);
+        for (int i = 0; i < n; i++) {
+            if (buffer[i] == action) return true;
+        }
+        return false;
+    }
 
-        assertTrue(r.board.isPieceAtOffset(r.currPlayer.spawnPoint, "right", 2));
+    /**
+     * Checks the alpha-beta search finds a win one move away
+     */
+    @Test
+    public void alphaBetaFindsWin() {
+        Round round = new Round();
+        Player yellow = round.currPlayer;
+        Player green = round.getNextPlayer(yellow);
+        placeForTest(round, yellow, 'G', 3, 1); // Swords on every side, a move from green's face
+        placeForTest(round, green, 'B', 5, 5);
+
+        int action = new AlphaBetaController(yellow.token, 5000).chooseAction(round);
+        assertEquals("move G left", MoveGenerator.toString(action));
+        assertTrue(MoveGenerator.apply(round, action));
+        assertEquals(Round.STATE.GAMEOVER, round.state);
+        assertTrue(green.lost);
+    }
+
+    private static Piece placeForTest(Round round, Player player, char name, int x, int y) {
+        Piece piece = Player.findPieceByName(player.getPiecesAvailable(), name);
+        player.getPiecesAvailable().remove(piece);
+        piece.addToPlayersBoardPieces(new Coord(x, y));
+        round.board.placeAt(piece, x, y);
+        return piece;
+    }
+
+    /**
+     * Checks that once the board has been drawn, redrawing it after
+     * a create only writes a small part of a whole frame, and
+     * redrawing it when nothing changed writes nothing. A terminal
+     * too short for the board gets the whole frame every time.
+     */
+    @Test
+    public void diffRedraw() {
+        BoardView view = new BoardView(r, false, 80);
+        PrintStream realOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            view.draw();
+            int fullFrame = out.size();
+            out.reset();
+
+            ic.testCommandsToExecute.add(new CreateNode("B", 0));
+            ic.runTestCommands(r);
+            out.reset();
+            view.draw();
+            assertTrue(out.size() > 0);
+            assertTrue(out.size() < fullFrame / 10);
+
+            out.reset();
+            view.draw();
+            assertEquals(0, out.size());
+
+            BoardView shortView = new BoardView(r, false, 24);
+            shortView.draw();
+            int shortFrame = out.size();
+            out.reset();
+            shortView.draw();
+            assertEquals(shortFrame, out.size());
+            assertFalse(out.toString().contains("\u001B["));
+        } finally {
+            System.setOut(realOut);
+        }
+    }
+
+    /**
+     * Checks a script plays commands in order, counts the ones that
+     * can't be played and stops at the end of the input
+     */
+    @Test
+    public void scriptMode() {
+        Script script = new Script(0, true);
+        Round round = script.play(new StringReader(
+                "create B 0\nmove B up\nundo\nmove Z up\npass\ncreate C 90\npass\n"));
+        assertEquals(Round.STATE.RUNNING, round.state);
+        assertEquals(Player.ColorIdentity.YELLOW, round.currPlayer.token);
+        assertEquals(1, round.players.get(0).getPiecesOnBoard().size());
+        assertEquals(new Coord(7, 7), round.players.get(0).getPiecesOnBoard().get(0).getPos());
+        assertEquals(1, round.players.get(1).getPiecesOnBoard().size());
+
+        Script.Summary summary = script.getSummary();
+        assertEquals(1, summary.getGames());
+        assertEquals(1, summary.getUnfinished());
+        assertEquals(6, summary.getCommands());
+        assertEquals(1, summary.getRejected());
+        assertEquals(2, summary.getTurns());
+    }
+
+    @Test
+    public void gameRecords() throws IOException {
+        File file = File.createTempFile("games", ".ssgr");
+        file.deleteOnExit();
+        Tournament tournament = new Tournament(7, 100);
+        try (GameRecordWriter archive = new GameRecordWriter(file)) {
+            tournament.setArchive(archive);
+            tournament.run(50, 1);
+        }
+
+        GameEngine engine = new GameEngine();
+        GameRecords records = new GameRecords(engine);
+        try (GameRecordReader reader = new GameRecordReader(file)) {
+            for (int game = 0; game < 50; game++) {
+                assertTrue(reader.next());
+                GameEngine played = tournament.replay(game);
+                assertEquals(played.getHistoryLength(), reader.getActionCount());
+                assertTrue(records.replay(reader));
+                assertEquals(played.getTurns(), engine.getTurns());
+                assertEquals(played.getWinner() == null ? null : played.getWinner().token,
+                        engine.getWinner() == null ? null : engine.getWinner().token);
+            }
+            assertFalse(reader.next());
+        }
+        assertEquals(50, records.getResults().getGames());
+        assertEquals(0, records.getInvalid());
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        File file = File.createTempFile("game", ".sav");
+        file.deleteOnExit();
+        Script script = new Script(0, true);
+        Round round = script.play(new StringReader(
+                "create B 90\npass\ncreate C 0\nsave " + file + "\nmove C down\npass\nload " + file + "\n"));
+        assertEquals(Player.ColorIdentity.GREEN, round.currPlayer.token);
+        assertTrue(round.currPlayer.isPieceCreated());
+        assertFalse(round.currPlayer.isStartOfTurn());
+        Piece c = round.board.getPieceAtPos(2, 2);
+        assertNotNull(c);
+        assertEquals("C", c.getName());
+        assertEquals(new Coord(2, 2), c.getPos());
+        assertFalse(c.beenAlteredThisTurn());
+        assertNull(round.board.getPieceAtPos(3, 2));
+        Piece b = round.board.getPieceAtPos(7, 7);
+        assertEquals(Piece.Abilities.NOTHING, b.ability(Piece.Direction.SOUTH));
+        assertEquals(23, round.players.get(0).getPiecesAvailable().size());
+        assertEquals(0, round.prevMoves.size());
+
+        // A layout that isn't one of the piece's rotations is corrupt, and nothing is loaded
+        ByteBuffer saved = ByteBuffer.allocate(Snapshot.SIZE);
+        Snapshot.save(round, saved);
+        // B has a side without a sword, so no turn of it has swords all round
+        int notRotation = LayoutTable.encode(Piece.Abilities.SWORD, Piece.Abilities.SWORD,
+                Piece.Abilities.SWORD, Piece.Abilities.SWORD);
+        saved.put(20 + 4 * (b.id - 1) + 2, (byte) notRotation);
+        try {
+            Snapshot.load(round, (ByteBuffer) saved.rewind());
+            fail();
+        } catch (IOException e) {
+            assertEquals("Saved game is corrupt", e.getMessage());
+        }
+        assertSame(b, round.board.getPieceAtPos(7, 7));
+        assertEquals(Piece.Abilities.NOTHING, b.ability(Piece.Direction.SOUTH));
+    }
+
+    @Test
+    public void pieceCatalogue() throws IOException {
+        File file = File.createTempFile("pieces", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("// N E S W", "SWORD SHIELD SWORD SWORD", "NOTHING\tNOTHING\tNOTHING\tSHIELD"));
+        PieceCatalogue catalogue = PieceCatalogue.get(file.getPath());
+        assertSame(catalogue, PieceCatalogue.get(file.getPath()));
+        assertEquals(2, catalogue.size());
+        assertEquals(LayoutTable.encode(Piece.Abilities.NOTHING, Piece.Abilities.NOTHING,
+                Piece.Abilities.NOTHING, Piece.Abilities.SHIELD), catalogue.getLayoutCode(1));
+
+        Round round = new Round(catalogue);
+        assertEquals(2, round.players.get(1).getPiecesAvailable().size());
+        assertEquals("B", round.players.get(1).getPiecesAvailable().get(1).getName());
+
+        // Changing the file loads it again
+        Files.write(file.toPath(), Arrays.asList("SWORD SWORD SWORD SWORD", "SHIELD SHIELD SHIELD SHIELD", "SWORD SWORD SWORD SHIELD"));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertEquals(3, PieceCatalogue.get(file.getPath()).size());
+        assertEquals(2, catalogue.size());
+
+        Files.write(file.toPath(), Arrays.asList("SWORD SWORD SWORD SWORD", "SWORD SPEAR SWORD SWORD"));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        try {
+            PieceCatalogue.get(file.getPath());
+            fail();
+        } catch (PieceDataException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+
+    @Test
+    public void playerZones() {
+        Player p = r.currPlayer;
+        Piece c = p.getPiece(Player.Zone.AVAILABLE, 'c');
+        assertEquals("C", c.getName());
+        assertEquals(24, p.count(Player.Zone.AVAILABLE));
+
+        p.moveTo(c, Player.Zone.CEMETERY);
+        assertEquals(Player.Zone.CEMETERY, p.zoneOf(c));
+        assertNull(p.getPiece(Player.Zone.AVAILABLE, 'C'));
+        assertEquals(23, p.getPiecesAvailable().size());
+        assertEquals("D", p.getPiecesAvailable().get(2).getName());
+        assertTrue(p.getPiecesCemetery().contains(c));
+
+        // The lists are views in letter order, adding to one takes the piece out of the others
+        Piece a = p.getPiece(Player.Zone.AVAILABLE, 'A');
+        p.getPiecesCemetery().add(a);
+        assertEquals(Arrays.asList(a, c), p.getPiecesCemetery());
+        assertEquals(22, p.count(Player.Zone.AVAILABLE));
+        Piece b = p.getPiece(Player.Zone.AVAILABLE, 'B');
+        try {
+            p.getPiecesCemetery().add(2, b);
+            fail("B can only go between A and C");
+        } catch (UnsupportedOperationException expected) {}
+        p.getPiecesCemetery().add(1, b);
+        assertEquals(Arrays.asList(a, b, c), p.getPiecesCemetery());
+        assertTrue(p.getPiecesCemetery().remove(b));
+        assertTrue(p.getPiecesCemetery().remove(c));
+        assertNull(p.zoneOf(c));
+        assertNull(r.getNextPlayer(p).zoneOf(c));
+    }
+
+    @Test
+    public void allowedActions() {
+        int pass = 1 << MoveGenerator.PASS;
+        int alter = 1 << MoveGenerator.MOVE | 1 << MoveGenerator.ROTATE;
+        int undo = 1 << MoveGenerator.UNDO;
+        assertEquals(pass | 1 << MoveGenerator.CREATE, r.allowedActions());
+
+        ic.testCommandsToExecute.add(new CreateNode("B", 0));
+        ic.runTestCommands(r);
+        assertEquals(pass | alter | undo, r.allowedActions());
+        assertSame(r.userIOView.playerChoices(r), r.userIOView.playerChoices(r));
+
+        ic.testCommandsToExecute.add(new RotateNode("B", 90));
+        ic.runTestCommands(r);
+        assertEquals(pass | undo, r.allowedActions());
+        assertEquals(1 << 1, r.currPlayer.getTurnState() & ((1 << 24) - 1));
+        r.undo();
+        assertEquals(pass | alter | undo, r.allowedActions());
+        assertFalse(r.currPlayer.getPiece(Player.Zone.BOARD, 'B').beenAlteredThisTurn());
+    }
+
+    @Test
+    public void cellKinds() {
+        Board b = r.board;
+        assertTrue(b.outOfBounds(0, 0) && b.outOfBounds(9, 8) && b.outOfBounds(-1, 5) && b.outOfBounds(4, 10));
+        assertFalse(b.outOfBounds(1, 1) || b.outOfBounds(5, 5));
+        assertTrue(b.isFacePosition(1, 1) && b.isFacePosition(8, 8));
+        assertTrue(b.isSpawnPosition(2, 2) && b.isSpawnPosition(7, 7) && !b.isSpawnPosition(1, 1));
+        assertTrue(b.isNextToFace(2, 1) && b.isNextToFace(1, 2) && b.isNextToFace(7, 8) && b.isNextToFace(8, 7));
+        assertFalse(b.isNextToFace(0, 1) || b.isNextToFace(2, 2));
+
+        Player green = r.getPlayerbyColor(Player.ColorIdentity.GREEN);
+        Piece piece = green.getPiece(Player.Zone.AVAILABLE, 'A');
+        for (Piece.Direction d : Piece.Direction.values()) {
+            boolean sword = piece.ability(d) == Piece.Abilities.SWORD;
+            int x = d == Piece.Direction.WEST ? 2 : d == Piece.Direction.EAST ? 7 : d == Piece.Direction.NORTH ? 1 : 8;
+            int y = d == Piece.Direction.WEST ? 1 : d == Piece.Direction.EAST ? 8 : d == Piece.Direction.NORTH ? 2 : 7;
+            assertEquals(sword, b.isGameOver(piece, x, y));
+        }
+        assertFalse(b.isGameOver(piece, 5, 5));
+    }
+
+    /**
+     * Checks the Zobrist key kept up to date as a game is played matches
+     * one worked out from scratch, goes back with undo, and is the same
+     * for the same position reached in a different order
+     */
+    @Test
+    public void zobristKeys() {
+        GameEngine engine = new GameEngine();
+        engine.setRecordUndo(true);
+        Round round = engine.getRound();
+        int[] buffer = new int[MoveGenerator.MAX_ACTIONS];
+        SplittableRandom random = new SplittableRandom(5);
+        for (int game = 0; game < 20; game++) {
+            engine.reset();
+            while (!engine.isGameOver() && engine.getTurns() < 100) {
+                long before = round.getZobristKey();
+                int action = buffer[random.nextInt(engine.legalActions(buffer))];
+                assertTrue(engine.apply(action));
+                assertEquals(Zobrist.of(round), round.getZobristKey());
+                if (MoveGenerator.type(action) != MoveGenerator.PASS && engine.undo()) {
+                    assertEquals(before, round.getZobristKey());
+                    assertTrue(engine.apply(action));
+                }
+            }
+        }
+
+        GameEngine other = new GameEngine();
+        engine.reset();
+        other.reset();
+        assertTrue(engine.create('B', 0) && engine.pass() && engine.create('C', 0) && engine.pass());
+        assertTrue(other.create('B', 90) && other.rotate('B', 270) && other.pass());
+        assertTrue(other.create('C', 0) && other.pass());
+        assertEquals(round.getZobristKey(), other.getRound().getZobristKey());
+        assertTrue(other.rotate('B', 90));
+        assertFalse(round.getZobristKey() == other.getRound().getZobristKey());
+        assertEquals(new Coord(3, 4).hashCode(), new Coord(3, 4).hashCode());
+    }
+
+    /**
+     * Plays random games alongside their mirror images, checking each
+     * mapped action is allowed in the mirror image and gives the mirror
+     * image of the position, and both have the same canonical key
+     */
+    @Test
+    public void symmetry() throws IOException {
+        GameEngine engine = new GameEngine();
+        GameEngine mirror = new GameEngine();
+        Round round = engine.getRound(), mirrored = mirror.getRound();
+        ByteBuffer expected = ByteBuffer.allocate(Snapshot.SIZE), actual = ByteBuffer.allocate(Snapshot.SIZE);
+        int[] buffer = new int[MoveGenerator.MAX_ACTIONS];
+        SplittableRandom random = new SplittableRandom(25);
+        for (int game = 0; game < 20; game++) {
+            engine.reset();
+            mirror.reset();
+            Snapshot.save(round, (ByteBuffer) expected.rewind());
+            byte[] bytes = expected.array().clone();
+            Snapshot.mirror(expected, 0);
+            Snapshot.load(mirrored, (ByteBuffer) expected.rewind());
+            Snapshot.mirror(expected, 0);
+            assertTrue(Arrays.equals(bytes, expected.array()));
+            while (!engine.isGameOver() && engine.getTurns() < 100) {
+                int action = buffer[random.nextInt(engine.legalActions(buffer))];
+                assertTrue(engine.apply(action));
+                assertTrue(mirror.apply(Symmetry.mirrorAction(action)));
+                assertEquals(round.getMirroredZobristKey(), mirrored.getZobristKey());
+                assertEquals(Symmetry.canonicalKey(round), Symmetry.canonicalKey(mirrored));
+                Snapshot.save(round, (ByteBuffer) expected.rewind());
+                Snapshot.mirror(expected, 0);
+                Snapshot.save(mirrored, (ByteBuffer) actual.rewind());
+                assertTrue(Arrays.equals(expected.array(), actual.array()));
+                Symmetry.canonicalSnapshot(round, (ByteBuffer) expected.rewind());
+                Symmetry.canonicalSnapshot(mirrored, (ByteBuffer) actual.rewind());
+                assertTrue(Arrays.equals(expected.array(), actual.array()));
+                assertEquals(round.players.indexOf(round.currPlayer) != 0, Symmetry.isFlipped(round));
+            }
+        }
+        for (int action = 0; action < 1 << 10; action++) {
+            assertEquals(action, Symmetry.mirrorAction(Symmetry.mirrorAction(action)));
+        }
+        assertEquals(MoveGenerator.encode(MoveGenerator.MOVE, 0, 2), Symmetry.mirrorAction(MoveGenerator.encode(MoveGenerator.MOVE, 0, 0)));
+        assertEquals(MoveGenerator.encode(MoveGenerator.ROTATE, 3, 1), Symmetry.mirrorAction(MoveGenerator.encode(MoveGenerator.ROTATE, 3, 1)));
+    }
+
+    /**
+     * Checks the transposition table gives back what was stored, keeps the
+     * deepest result of a bucket and replaces the other entry, and that
+     * threads sharing it never read another position's result
+     */
+    @Test
+    public void transpositionTable() throws Exception {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 7L << 32 | 1, sameBucket = 7L << 32 | 2, alsoSameBucket = 7L << 32 | 3;
+        assertEquals(0, table.probe(key));
+        table.store(key, 130, -42, 6, TranspositionTable.LOWER);
+        long data = table.probe(key);
+        assertEquals(-42, TranspositionTable.score(data));
+        assertEquals(130, TranspositionTable.action(data));
+        assertEquals(6, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+
+        table.store(sameBucket, 1, 1, 2, TranspositionTable.EXACT);
+        table.store(alsoSameBucket, 1, 2, 3, TranspositionTable.EXACT);
+        assertEquals(6, TranspositionTable.depth(table.probe(key)));
+        assertEquals(0, table.probe(sameBucket));
+        assertEquals(2, TranspositionTable.score(table.probe(alsoSameBucket)));
+        assertEquals(0.2, table.getCollisionRate(), 1e-9); // 1 of 5 probes missed in a bucket with other positions
+        assertEquals(2.0 / table.capacity(), table.getFill(), 1e-9);
+
+        long[] keys = new SplittableRandom(1).longs(50000).toArray();
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200000; i++) {
+                    long k = keys[random.nextInt(keys.length)];
+                    if (random.nextBoolean()) table.store(k, (int) k & 0x3FF, (int) (k >> 40), 1, TranspositionTable.EXACT);
+                    else {
+                        long d = table.probe(k);
+                        if (d != 0 && TranspositionTable.score(d) != (int) (k >> 40)) wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(0, wrong.get());
+        assertTrue(table.getHitRate() > 0);
     }
-}
\ No newline at end of file
+}
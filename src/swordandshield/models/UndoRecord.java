@@ -0,0 +1,123 @@
+package swordandshield.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small reversible record of what a single command changed. Rather than
+ * cloning the whole round before every command, a command saves the state
+ * of only the pieces it is about to touch (position, layout, which zone
+ * they are in) along with the turn flags of the players. Reverting the
+ * record puts exactly those pieces back, so an undo costs memory and time
+ * in the number of pieces the command touched, not in the size of the game.
+ */
+public class UndoRecord implements Serializable {
+
+    private final List<PieceState> pieces = new ArrayList<>();
+
+    private final Round.STATE state;
+    private final Player currPlayer;
+    private final int[] turnStates;
+    private final boolean[] lost;
+
+    /**
+     * Saves the round wide state that every command can change,
+     * i.e. the current player and the players turn flags
+     * @param round round the command is about to be executed on
+     */
+    public UndoRecord(Round round) {
+        this.state = round.state;
+        this.currPlayer = round.currPlayer;
+
+        int numPlayers = round.players.size();
+        turnStates = new int[numPlayers];
+        lost = new boolean[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            Player p = round.players.get(i);
+            turnStates[i] = p.getTurnState();
+            lost[i] = p.lost;
+        }
+    }
+
+    /**
+     * Saves the state of a piece before it gets changed. Saving
+     * the same piece twice keeps the first (oldest) state.
+     * @param round round the piece belongs to
+     * @param piece piece that is about to be changed
+     */
+    public void save(Round round, Piece piece) {
+        for (PieceState s : pieces) {
+            if (s.piece == piece) return;
+        }
+        pieces.add(new PieceState(round, piece));
+    }
+
+    /**
+     * Saves every piece that would be shifted when the piece at origPos
+     * is moved in the direction dir. See Piece.detAdjacentPieceLength()
+     * @param round round the pieces belong to
+     * @param origPos position of the piece being moved
+     * @param dir up/down/left/right
+     * @param adjacentLength number of pieces adjacent to the moved piece
+     */
+    public void savePushChain(Round round, Coord origPos, Piece.Direction dir, int adjacentLength) {
+        for (int i = 0; i <= adjacentLength; i++) {
+            Piece p = round.board.getPieceAtOffset(origPos, dir, i);
+            if (p != null) save(round, p);
+        }
+    }
+
+    /**
+     * Returns the round to the state it was in when this record was created,
+     * for everything that was saved in it.
+     * @param round round to revert
+     */
+    public void revert(Round round) {
+        // Lift every saved piece off the grid first so pieces that
+        // swapped cells in a push chain don't overwrite each other
+        for (PieceState s : pieces) {
+            Coord pos = s.piece.getPos();
+            if (pos != null && round.board.getPieceAtPos(pos) == s.piece) {
+                round.board.clearAt(pos.getX(), pos.getY());
+            }
+        }
+
+        for (PieceState s : pieces) {
+            s.piece.setPos(s.pos);
+            s.piece.setLayoutCode(s.layoutCode);
+            s.piece.player.moveTo(s.piece, s.zone);
+            if (s.onGrid) {
+                round.board.placeAt(s.piece, s.pos.getX(), s.pos.getY());
+            }
+        }
+        round.board.markSettled(); // Reactions were already resolved in the position being returned to
+
+        round.state = state;
+        round.currPlayer = currPlayer;
+        for (int i = 0; i < round.players.size(); i++) {
+            Player p = round.players.get(i);
+            p.setTurnState(turnStates[i]);
+            p.lost = lost[i];
+        }
+    }
+
+    /**
+     * State of a single piece at the time it was saved
+     */
+    private static class PieceState implements Serializable {
+        private final Piece piece;
+        private final Coord pos;
+        private final int layoutCode;
+        private final boolean onGrid;
+        private final Player.Zone zone;
+
+        PieceState(Round round, Piece piece) {
+            this.piece = piece;
+            this.pos = piece.getPos();
+            this.layoutCode = piece.getLayoutCode();
+            this.onGrid = pos != null && round.board.getPieceAtPos(pos) == piece;
+            this.zone = piece.player.zoneOf(piece);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package swordandshield.models;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random 64 bit keys for Zobrist hashing a game. The key of a position is
+ * the XOR of one key for every feature of it: each piece on the board in its
+ * cell and orientation, the zone every piece is in, every per turn flag of
+ * each player and whose turn it is. Changing a feature is one XOR to take
+ * its old key out and one to put the new one in, so the Board and Players
+ * keep their part of the key up to date as the game is played, see
+ * Round.getZobristKey(). The per turn flags change many at a time at the
+ * end of every turn, so they are instead hashed when the key is asked for,
+ * a byte at a time through tables.
+ *
+ * The keys come from a fixed seed, so the same position has the same key in
+ * every run, e.g. keys written to a file can be compared later.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x5357_4f52_4453_4844L;
+
+    private static final int ORIENTATIONS = 4;
+    private static final int ZONES = Player.Zone.values().length;
+    // Per turn flags of a player, see Player.getTurnState()
+    static final int TURN_BITS = Player.MAX_PIECES + 2;
+
+    // PIECES[(id * NUM_CELLS + cell) * 4 + orientation]
+    private static final long[] PIECES = new long[(Piece.MAX_ID + 1) * Board.NUM_CELLS * ORIENTATIONS];
+    // ZONE_KEYS[id * ZONES + zone]
+    private static final long[] ZONE_KEYS = new long[(Piece.MAX_ID + 1) * ZONES];
+    // TURN[(color * 4 + i) * 256 + b] is the XOR of the keys of the flags set in b,
+    // byte i of a turn state, so the key of every flag is 4 reads however many are set
+    private static final long[] TURN = new long[Player.ColorIdentity.values().length * 4 * 256];
+
+    // In the key when it's the turn of any player but the first
+    static final long SIDE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < PIECES.length; i++) PIECES[i] = random.nextLong();
+        for (int i = 0; i < ZONE_KEYS.length; i++) ZONE_KEYS[i] = random.nextLong();
+        for (int color = 0; color < Player.ColorIdentity.values().length; color++) {
+            for (int bit = 0; bit < TURN_BITS; bit++) {
+                long key = random.nextLong();
+                int table = (color * 4 + bit / 8) * 256;
+                for (int b = 0; b < 256; b++) {
+                    if ((b & 1 << (bit % 8)) != 0) TURN[table + b] ^= key;
+                }
+            }
+        }
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * @param piece piece on the board
+     * @param cell y * 10 + x of the cell it's in
+     * @return key of the piece being in the cell, turned the way it is now
+     */
+    static long piece(Piece piece, int cell) {
+        return piece(piece.id, cell, piece.orientation());
+    }
+
+    /**
+     * @param piece piece on the board
+     * @param cell y * 10 + x of the cell it's in
+     * @return key of the piece's mirror image in the mirror image of the cell, see Symmetry
+     */
+    static long mirroredPiece(Piece piece, int cell) {
+        return piece(Symmetry.mirrorId(piece.id), Symmetry.mirrorCell(cell), piece.mirroredOrientation());
+    }
+
+    private static long piece(int id, int cell, int orientation) {
+        return PIECES[(id * Board.NUM_CELLS + cell) * ORIENTATIONS + orientation];
+    }
+
+    static long zone(int id, int zone) {
+        return ZONE_KEYS[id * ZONES + zone];
+    }
+
+    /**
+     * @return key of every per turn flag set in a turn state, see Player.getTurnState()
+     */
+    static long turn(Player.ColorIdentity color, int turnState) {
+        int table = color.ordinal() * 4 * 256;
+        return TURN[table + (turnState & 0xFF)] ^
+                TURN[table + 256 + (turnState >>> 8 & 0xFF)] ^
+                TURN[table + 512 + (turnState >>> 16 & 0xFF)] ^
+                TURN[table + 768 + (turnState >>> 24)];
+    }
+
+    /**
+     * Works out the key of a round from scratch rather than from the parts
+     * kept up to date as it is played, e.g. to check them
+     * @param round round to hash
+     * @return the same as round.getZobristKey() should be
+     */
+    public static long of(Round round) {
+        long key = 0;
+        for (int cell = 0; cell < Board.NUM_CELLS; cell++) {
+            Piece p = round.board.getPieceAtPos(cell / Board.SIZE, cell % Board.SIZE);
+            if (p != null) key ^= piece(p, cell);
+        }
+        for (Player player : round.players) {
+            for (Piece p : player.piecesAvailable) key ^= zone(p.id, Player.Zone.AVAILABLE.ordinal());
+            for (Piece p : player.piecesOnBoard) key ^= zone(p.id, Player.Zone.BOARD.ordinal());
+            for (Piece p : player.piecesCemetery) key ^= zone(p.id, Player.Zone.CEMETERY.ordinal());
+            key ^= turn(player.token, player.getTurnState());
+        }
+        if (round.currPlayer != round.players.get(0)) key ^= SIDE;
+        return key;
+    }
+}
@@ -0,0 +1,128 @@
+package swordandshield.simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an archive of games written by GameRecordWriter. The file is memory
+ * mapped and read in place, one game at a time, so going through millions
+ * of games doesn't copy or allocate anything per game.
+ *
+ * The format, all big endian:
+ *  file header:  int magic "SSGR", short version, short reserved
+ *  every game:   long piece set fingerprint, int action count,
+ *                then one 16 bit packed action (see MoveGenerator) per action
+ *
+ * Files over 2GB are mapped a window at a time, moving the window on
+ * whenever the next game doesn't fit in it.
+ */
+public class GameRecordReader implements Closeable {
+
+    static final int MAGIC = 0x53534752;
+    static final int VERSION = 3; // 2: games are played with reactions, 3: in the order the player to move sees them
+
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int GAME_HEADER_BYTES = 12;
+
+    // Largest part of the file mapped at once
+    private static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long maxWindow;
+
+    // The mapped part of the file and where it starts in the file
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // Where the next game starts in the file
+    private long next = FILE_HEADER_BYTES;
+
+    // The current game, see next()
+    private long fingerprint;
+    private int actionCount;
+    private int actionsAt;
+
+    /**
+     * Opens an archive and checks its file header
+     * @param file archive written by GameRecordWriter
+     * @throws IOException if the file can't be read or isn't a game archive
+     */
+    public GameRecordReader(File file) throws IOException {
+        this(file, MAX_WINDOW);
+    }
+
+    GameRecordReader(File file, long maxWindow) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.maxWindow = maxWindow;
+        try {
+            if (size < FILE_HEADER_BYTES) throw new IOException(file + " is not a game archive");
+            map(0);
+            if (window.getInt(0) != MAGIC) throw new IOException(file + " is not a game archive");
+            int version = window.getShort(4);
+            if (version != VERSION) throw new IOException(file + " is version " + version + ", expected " + VERSION);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, maxWindow));
+    }
+
+    /**
+     * Moves on to the next game in the archive
+     * @return false once there are no more games
+     * @throws IOException if the archive ends part way through a game
+     */
+    public boolean next() throws IOException {
+        if (next == size) return false;
+        if (next + GAME_HEADER_BYTES > size) throw new IOException("Archive ends part way through a game");
+        if (next + GAME_HEADER_BYTES > windowStart + window.limit()) map(next);
+
+        int at = (int) (next - windowStart);
+        fingerprint = window.getLong(at);
+        actionCount = window.getInt(at + 8);
+        long end = next + GAME_HEADER_BYTES + 2L * actionCount;
+        if (actionCount < 0 || end > size) throw new IOException("Archive ends part way through a game");
+        if (end > windowStart + window.limit()) {
+            if (end - next > maxWindow) throw new IOException("Game of " + actionCount + " actions is too long to map");
+            map(next);
+            at = 0;
+        }
+        actionsAt = at + GAME_HEADER_BYTES;
+        next = end;
+        return true;
+    }
+
+    /**
+     * @return fingerprint of the piece set the current game was played with
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * @param i index of the action in the current game, 0 to getActionCount() - 1
+     * @return the packed action, see MoveGenerator
+     */
+    public int getAction(int i) {
+        return window.getShort(actionsAt + 2 * i) & 0xFFFF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,47 @@
+package swordandshield.simulation;
+
+import java.io.*;
+
+/**
+ * Writes games to an archive file in the compact game record format, see
+ * GameRecordReader for the layout. Writes are buffered and synchronized, so
+ * one writer can be shared by every thread of a tournament.
+ */
+public class GameRecordWriter implements Closeable {
+
+    private final DataOutputStream out;
+
+    /**
+     * Creates the file, replacing it if it already exists, and writes the file header
+     * @param file archive to write
+     * @throws IOException if the file can't be written
+     */
+    public GameRecordWriter(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(GameRecordReader.MAGIC);
+        out.writeShort(GameRecordReader.VERSION);
+        out.writeShort(0);
+    }
+
+    /**
+     * Adds one game to the archive
+     * @param fingerprint fingerprint of the piece set the game was played with,
+     *                    see GameEngine.getPieceSetFingerprint()
+     * @param actions packed actions of the game in the order they were played,
+     *                see MoveGenerator
+     * @param count number of actions to write from the start of actions
+     * @throws IOException if writing fails
+     */
+    public synchronized void write(long fingerprint, int[] actions, int count) throws IOException {
+        out.writeLong(fingerprint);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeShort(actions[i]);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,109 @@
+package swordandshield.simulation;
+
+import swordandshield.models.GameEngine;
+import swordandshield.models.Player;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays archives of games written by a Tournament (or anything else using
+ * GameRecordWriter) and adds up how they went.
+ */
+public class GameRecords {
+
+    private final GameEngine engine;
+    private final long fingerprint;
+
+    private final Tournament.Results results = new Tournament.Results();
+    private long skipped;
+    private long invalid;
+
+    /**
+     * @param engine engine to replay the games on
+     */
+    public GameRecords(GameEngine engine) {
+        this.engine = engine;
+        this.fingerprint = engine.getPieceSetFingerprint();
+    }
+
+    /**
+     * Replays the current game of a reader on the engine, leaving the engine
+     * in the state the game finished in
+     * @param reader reader positioned on a game, see GameRecordReader.next()
+     * @return false if the game was played with a different piece set or
+     *         one of its actions wasn't allowed, i.e. it wasn't replayed fully
+     */
+    public boolean replay(GameRecordReader reader) {
+        if (reader.getFingerprint() != fingerprint) {
+            skipped++;
+            return false;
+        }
+        engine.reset();
+        int count = reader.getActionCount();
+        for (int i = 0; i < count; i++) {
+            if (!engine.apply(reader.getAction(i))) {
+                invalid++;
+                return false;
+            }
+        }
+        Player winner = engine.getWinner();
+        results.add(winner == null ? null : winner.token, engine.getTurns());
+        return true;
+    }
+
+    /**
+     * Replays every game of an archive
+     * @param file archive to replay
+     * @throws IOException if the archive can't be read
+     */
+    public void replayAll(File file) throws IOException {
+        try (GameRecordReader reader = new GameRecordReader(file)) {
+            while (reader.next()) replay(reader);
+        }
+    }
+
+    /**
+     * @return results of the games that were replayed fully,
+     *         unfinished games count as draws
+     */
+    public Tournament.Results getResults() {
+        return results;
+    }
+
+    /**
+     * @return games played with a different piece set to the engine's
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return games with an action that wasn't allowed when it came up
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Usage: GameRecords file ...
+     * Replays every game in the archives and prints a summary
+     */
+    public static void main(String[] args) throws IOException {
+        GameRecords records = new GameRecords(new GameEngine());
+        long start = System.nanoTime();
+        for (String file : args) {
+            records.replayAll(new File(file));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Tournament.Results results = records.getResults();
+        System.out.printf("%d games replayed in %.2fs (%.0f games/sec), %d skipped, %d invalid%n",
+                results.getGames(), seconds, results.getGames() / seconds, records.getSkipped(), records.getInvalid());
+        for (Player.ColorIdentity color : Player.ColorIdentity.values()) {
+            System.out.printf("%-7s wins: %6.2f%%%n", color, 100 * results.getWinRate(color));
+        }
+        System.out.printf("Draws:        %6.2f%%%n", 100.0 * results.getDraws() / Math.max(1, results.getGames()));
+        System.out.printf("Average game length: %.1f turns%n", results.getAverageTurns());
+    }
+}
@@ -0,0 +1,207 @@
+package swordandshield.simulation;
+
+import swordandshield.models.GameEngine;
+import swordandshield.models.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a large number of self-play games spread over a ForkJoinPool.
+ * Every game gets its own seed worked out from the tournament seed and the
+ * game's number, so any single game can be replayed exactly no matter which
+ * thread played it. Each task counts its own results and they are added up
+ * as the tasks are joined, so there's no shared state to lock.
+ */
+public class Tournament {
+
+    // Games a single task plays itself rather than splitting further
+    private static final int GAMES_PER_TASK = 256;
+
+    private final long seed;
+    private final int maxTurns;
+
+    // One engine per worker thread, engines are reset and reused between games
+    private final ThreadLocal<GameEngine> engines = ThreadLocal.withInitial(GameEngine::new);
+
+    // Where every game is written as it finishes, null to not keep them
+    private GameRecordWriter archive;
+
+    /**
+     * @param seed seed for the whole tournament
+     * @param maxTurns turns after which a game is called a draw
+     */
+    public Tournament(long seed, int maxTurns) {
+        this.seed = seed;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Writes every game played from now on to an archive, in whatever order
+     * they finish. Each game can be replayed from it with GameRecords.
+     * @param archive writer to add games to, null to stop archiving
+     */
+    public void setArchive(GameRecordWriter archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Plays numGames games on a pool of the given number of threads
+     * @param numGames games to play
+     * @param threads parallelism of the pool
+     * @return the combined results of every game
+     */
+    public Results run(int numGames, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new PlayGames(0, numGames));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a single game of the tournament again, e.g. to look at it
+     * after it came up in the results
+     * @param game number of the game in the tournament
+     * @return the engine the game was played on, in its final state
+     */
+    public GameEngine replay(int game) {
+        GameEngine engine = new GameEngine();
+        engine.playRandomGame(new SplittableRandom(gameSeed(seed, game)), maxTurns);
+        return engine;
+    }
+
+    /**
+     * Works out the seed of one game from the tournament seed. Uses the
+     * SplitMix64 mixing function so neighbouring games get unrelated seeds.
+     */
+    static long gameSeed(long seed, int game) {
+        long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Plays the games numbered [from, to), splitting in half until
+     * there are few enough games to play on this thread
+     */
+    private class PlayGames extends RecursiveTask<Results> {
+        private final int from;
+        private final int to;
+
+        PlayGames(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Results compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                Results results = new Results();
+                GameEngine engine = engines.get();
+                for (int game = from; game < to; game++) {
+                    Player winner = engine.playRandomGame(new SplittableRandom(gameSeed(seed, game)), maxTurns);
+                    results.add(winner == null ? null : winner.token, engine.getTurns());
+                    if (archive != null) archiveGame(engine);
+                }
+                return results;
+            }
+            int mid = (from + to) >>> 1;
+            PlayGames left = new PlayGames(from, mid);
+            left.fork();
+            Results right = new PlayGames(mid, to).compute();
+            return left.join().merge(right);
+        }
+
+        private void archiveGame(GameEngine engine) {
+            try {
+                archive.write(engine.getPieceSetFingerprint(), engine.getHistory(), engine.getHistoryLength());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Counts from a number of games. Only ever touched by one thread
+     * at a time, results of different tasks are merged together.
+     */
+    public static class Results {
+        private final long[] wins = new long[Player.ColorIdentity.values().length];
+        private long games;
+        private long draws;
+        private long turns;
+
+        void add(Player.ColorIdentity winner, int gameTurns) {
+            games++;
+            turns += gameTurns;
+            if (winner == null) draws++;
+            else wins[winner.ordinal()]++;
+        }
+
+        Results merge(Results other) {
+            games += other.games;
+            draws += other.draws;
+            turns += other.turns;
+            for (int i = 0; i < wins.length; i++) wins[i] += other.wins[i];
+            return this;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getDraws() {
+            return draws;
+        }
+
+        public long getWins(Player.ColorIdentity color) {
+            return wins[color.ordinal()];
+        }
+
+        public double getWinRate(Player.ColorIdentity color) {
+            return games == 0 ? 0 : (double) getWins(color) / games;
+        }
+
+        public double getAverageTurns() {
+            return games == 0 ? 0 : (double) turns / games;
+        }
+    }
+
+    /**
+     * Usage: Tournament [games] [threads] [seed] [maxTurns] [archive]
+     * Every game is written to the archive file if there is one.
+     */
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int maxTurns = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        Tournament tournament = new Tournament(seed, maxTurns);
+        GameRecordWriter archive = args.length > 4 ? new GameRecordWriter(new File(args[4])) : null;
+        tournament.setArchive(archive);
+        long start = System.nanoTime();
+        Results results;
+        try {
+            results = tournament.run(games, threads);
+        } finally {
+            if (archive != null) archive.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games on %d threads in %.2fs (%.0f games/sec)%n",
+                results.getGames(), threads, seconds, results.getGames() / seconds);
+        for (Player.ColorIdentity color : Player.ColorIdentity.values()) {
+            System.out.printf("%-7s wins: %6.2f%%%n", color, 100 * results.getWinRate(color));
+        }
+        System.out.printf("Draws:        %6.2f%%%n", 100.0 * results.getDraws() / Math.max(1, results.getGames()));
+        System.out.printf("Average game length: %.1f turns%n", results.getAverageTurns());
+    }
+}
@@ -1,77 +1,66 @@
 package swordandshield.startup;
 
+import swordandshield.exceptions.PieceDataException;
 import swordandshield.models.Piece;
-import swordandshield.models.Player;
 
 import java.io.*;
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * Loads data from a text file containing all the information
- * for the pieces used in the Sword and Shields game.
+ * for the pieces used in the Sword and Shields game. Each line is one
+ * piece, lettered from A, listing its abilities north, east, south then
+ * west. Blank lines and lines starting with // are skipped.
+ * See PieceCatalogue, which keeps what is loaded so it's only read once.
  */
-public class DataLoader implements Serializable {
+final class DataLoader {
 
-    public DataLoader(Player player) {
-        player.piecesAvailable = parsePieces(player);
-    }
-
-    /**
-     * Parses the information in the text file to return a list of pieces
-     * containing the correct data
-     * @param player player that these pieces that will be assigned to
-     * @return List of pieces to be assigned to a player
-     */
-    private List<Piece> parsePieces(Player player) {
-        List<Piece> piecesAvailable = new ArrayList<>();
-        try {
-            BufferedReader data = new BufferedReader(new FileReader(new File("PieceData.txt")));
-            try {
-                data.readLine(); // Get rid of first comment line
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            String line;
-            Character name = 'A';
+    private static final Piece.Abilities[] ABILITIES = Piece.Abilities.values();
 
-            Map<Integer, Piece.Direction> intToDir = new HashMap<>();
-            intToDir.put(1, Piece.Direction.NORTH);
-            intToDir.put(2, Piece.Direction.EAST);
-            intToDir.put(3, Piece.Direction.SOUTH);
-            intToDir.put(4, Piece.Direction.WEST);
+    // Letters A - X
+    static final int MAX_PIECES = 24;
 
-            while ((line = data.readLine()) != null) {
-                String[] values = line.split("\t");
+    private DataLoader() {}
 
-                HashMap<Piece.Direction, Piece.Abilities> abilities = new HashMap<>();
+    /**
+     * Parses the information in the text file to return the layout of every piece
+     * @param data piece data, one piece per line
+     * @param source where the data came from, for error messages
+     * @return layout code of each piece in letter order, packed 2 bits a side (see LayoutTable)
+     * @throws IOException if reading the data fails
+     * @throws PieceDataException if the data isn't in the right format
+     */
+    static int[] parse(BufferedReader data, String source) throws IOException {
+        int[] layouts = new int[MAX_PIECES];
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = data.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) continue;
 
-                int index = 0;
-                for (String v : values) {
-                    index++;
-                    Piece.Abilities ability = null;
-                    switch (v) {
-                        case "SWORD":
-                            ability = Piece.Abilities.SWORD;
-                            break;
-                        case "SHIELD":
-                            ability = Piece.Abilities.SHIELD;
-                            break;
-                        case "NOTHING":
-                            ability = Piece.Abilities.NOTHING;
-                            break;
-                    }
-                    abilities.put(intToDir.get(index), ability);
-                }
-                if (index%4 == 0) {
-                    Piece piece = new Piece(player, name, abilities);
-                    piecesAvailable.add(piece);
-                    name++;
-                }
+            String[] values = line.split("\\s+");
+            if (values.length != 4) {
+                throw new PieceDataException(source + " line " + lineNumber + ": expected 4 abilities, found " + values.length);
+            }
+            if (count == MAX_PIECES) {
+                throw new PieceDataException(source + " line " + lineNumber + ": more than " + MAX_PIECES + " pieces");
+            }
+            // Sides are listed north, east, south, west, packed 2 bits each (see LayoutTable)
+            int layoutCode = 0;
+            for (int side = 0; side < 4; side++) {
+                layoutCode |= ability(values[side], source, lineNumber).ordinal() << (2 * side);
             }
+            layouts[count++] = layoutCode;
+        }
+        return Arrays.copyOf(layouts, count);
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static Piece.Abilities ability(String value, String source, int lineNumber) {
+        for (Piece.Abilities a : ABILITIES) {
+            if (a.name().equalsIgnoreCase(value)) return a;
         }
-        return piecesAvailable;
+        throw new PieceDataException(source + " line " + lineNumber + ": unknown ability " + value);
     }
 }
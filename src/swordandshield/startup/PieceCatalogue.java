@@ -0,0 +1,135 @@
+package swordandshield.startup;
+
+import swordandshield.exceptions.PieceDataException;
+import swordandshield.models.Piece;
+import swordandshield.models.Player;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of piece layouts, loaded from a piece data file (see
+ * DataLoader). Each file is only read once per JVM and the catalogue is
+ * shared by every player and every game after that, which just make their
+ * own pieces from it.
+ *
+ * Files are looked for in the working directory first, then on the
+ * classpath. A file in the working directory is checked each time its
+ * catalogue is asked for and loaded again if it has changed, so pieces
+ * can be edited without restarting. Games that have already started keep
+ * the pieces they were set up with.
+ */
+public final class PieceCatalogue {
+
+    public static final String DEFAULT_FILE = "PieceData.txt";
+
+    private static final ConcurrentHashMap<String, PieceCatalogue> LOADED = new ConcurrentHashMap<>();
+
+    private static volatile String defaultFile = DEFAULT_FILE;
+
+    // lastModified and length of catalogues that came from the classpath
+    private static final long NOT_A_FILE = -1;
+
+    private final String file;
+    private final int[] layouts;
+
+    // What the file looked like when it was loaded, so changes to it can be noticed
+    private final long lastModified;
+    private final long length;
+
+    private PieceCatalogue(String file, int[] layouts, long lastModified, long length) {
+        this.file = file;
+        this.layouts = layouts;
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    /**
+     * Gets the pieces of a piece data file, loading the file if it hasn't
+     * been loaded yet or has changed since it was
+     * @param file path of the file, or its name on the classpath
+     * @return the catalogue of the file
+     * @throws PieceDataException if the file can't be found or read or isn't in the right format
+     */
+    public static PieceCatalogue get(String file) {
+        PieceCatalogue catalogue = LOADED.get(file);
+        if (catalogue != null && !catalogue.isStale()) return catalogue;
+        return LOADED.compute(file, (f, old) -> old != null && !old.isStale() ? old : load(f));
+    }
+
+    /**
+     * @return the pieces games are set up with unless they ask for others
+     */
+    public static PieceCatalogue getDefault() {
+        return get(defaultFile);
+    }
+
+    /**
+     * Changes which file the pieces of new games come from
+     * @param file path of the file, or its name on the classpath
+     */
+    public static void setDefaultFile(String file) {
+        defaultFile = file;
+    }
+
+    private boolean isStale() {
+        if (lastModified == NOT_A_FILE) return false;
+        File f = new File(file);
+        return f.lastModified() != lastModified || f.length() != length;
+    }
+
+    private static PieceCatalogue load(String file) {
+        File f = new File(file);
+        try {
+            if (f.isFile()) {
+                long lastModified = f.lastModified();
+                long length = f.length();
+                try (BufferedReader data = new BufferedReader(new FileReader(f))) {
+                    return new PieceCatalogue(file, DataLoader.parse(data, file), lastModified, length);
+                }
+            }
+            InputStream resource = PieceCatalogue.class.getResourceAsStream("/" + file);
+            if (resource == null) throw new PieceDataException("Couldn't find piece data " + file);
+            try (BufferedReader data = new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8))) {
+                return new PieceCatalogue(file, DataLoader.parse(data, file), NOT_A_FILE, NOT_A_FILE);
+            }
+        } catch (IOException e) {
+            throw new PieceDataException("Couldn't read piece data " + file, e);
+        }
+    }
+
+    /**
+     * Makes a new set of pieces from the catalogue, lettered from A
+     * @param player player the pieces will belong to
+     * @return the pieces, in letter order
+     */
+    public List<Piece> createPieces(Player player) {
+        List<Piece> pieces = new ArrayList<>(layouts.length);
+        for (int i = 0; i < layouts.length; i++) {
+            pieces.add(new Piece(player, (char) ('A' + i), layouts[i]));
+        }
+        return pieces;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of pieces each player gets
+     */
+    public int size() {
+        return layouts.length;
+    }
+
+    /**
+     * @param index 0 for piece A, 1 for B etc
+     * @return the layout the piece starts with, packed as by LayoutTable.encode()
+     */
+    public int getLayoutCode(int index) {
+        return layouts[index];
+    }
+}
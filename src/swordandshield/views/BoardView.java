@@ -1,24 +1,126 @@
 package swordandshield.views;
 
-import swordandshield.models.Coord;
 import swordandshield.models.Piece;
 import swordandshield.models.Player;
 import swordandshield.models.Round;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.util.List;
 
 /**
- * A class to draw the board. It's gross, convoluted and a disgusting mess.
- * If someone makes a library to make this easy, do tell. This was living hell
- * to get right.
+ * A class to draw the board. The whole frame is built up in one reusable
+ * buffer and written to the console with a single write, rather than
+ * printing it a few characters at a time. Every cell is 3 rows of 7
+ * characters, pieces come with theirs already made (see Piece.getGlyphRow()).
+ *
+ * Unless told to do full redraws, the board is drawn once at the top of the
+ * screen and after that only the characters that changed since the last
+ * frame are written, using ANSI escape codes to move the cursor to them.
+ * Everything below the board scrolls on its own so the board stays put.
+ * That needs the whole board plus a few lines under it to fit on the
+ * screen, if the terminal is shorter or its height is unknown every frame
+ * is reprinted in full instead.
  */
 
 public class BoardView implements Serializable {
 
+    private static final String NEWLINE = System.lineSeparator();
+
+    // Glyph rows of the cells that aren't pieces, top to bottom
+    private static final String[] EMPTY = {"       ", "       ", "       "};
+    private static final String[] OUT_OF_BOUNDS = {"       ", "   X   ", "       "};
+    private static final String[] FACE = {"PROTECT", "       ", "  MEE  "};
+    private static final String[] GREEN_SPAWN = {" GREEN ", "       ", " SPAWN "};
+    private static final String[] YELLOW_SPAWN = {" YELLO ", "       ", " SPAWN "};
+
+    private static final String AVAILABLE_AND_GRID_SEPARATOR =
+            separator(3) + "   " + separator(10) + "   " + separator(3) + NEWLINE;
+    private static final String CEMETERY_SEPARATOR =
+            separator(8) + "       " + separator(8) + NEWLINE;
+
+    // ANSI escape codes
+    private static final String CSI = "\u001B[";
+    private static final String SAVE_CURSOR = "\u001B7";
+    private static final String RESTORE_CURSOR = "\u001B8";
+
+    // Unchanged characters between two changes that are cheaper to rewrite than to jump over
+    private static final int MAX_GAP = 8;
+
+    // Lines left scrolling under the board in diff mode, for the prompt and what's typed
+    private static final int MIN_SCROLL_LINES = 4;
+
     private Round round;
 
+    // Reprint the whole frame every time instead of only what changed
+    private boolean fullRedraw;
+
+    // Height of the terminal, 0 if unknown
+    private final int terminalLines;
+
+    // Reused for every frame, see draw()
+    private transient StringBuilder frame;
+    private transient StringBuilder output;
+    private transient byte[] bytes;
+
+    // The last frame written in diff mode, null until the first one
+    private transient char[] lastFrame;
+    private transient int lastLength;
+
     public BoardView(Round b) {
+        this(b, true);
+    }
+
+    /**
+     * @param b round to draw
+     * @param fullRedraw true to reprint the whole frame every time, false to
+     *                   only write what changed (needs an ANSI terminal)
+     */
+    public BoardView(Round b, boolean fullRedraw) {
+        this(b, fullRedraw, fullRedraw ? 0 : terminalLines());
+    }
+
+    /**
+     * @param b round to draw
+     * @param fullRedraw true to reprint the whole frame every time, false to
+     *                   only write what changed (needs an ANSI terminal)
+     * @param terminalLines height of the terminal, 0 if unknown. Diff mode falls
+     *                      back to full redraws if the board doesn't fit.
+     */
+    public BoardView(Round b, boolean fullRedraw, int terminalLines) {
         this.round = b;
+        this.fullRedraw = fullRedraw;
+        this.terminalLines = terminalLines;
+    }
+
+    /**
+     * Finds the height of the terminal from $LINES, or by asking stty
+     * about the controlling terminal as LINES often isn't exported
+     * @return number of lines, 0 if there's no terminal or it can't be found
+     */
+    static int terminalLines() {
+        try {
+            String lines = System.getenv("LINES");
+            if (lines != null) return Integer.parseInt(lines.trim());
+
+            Process stty = new ProcessBuilder("stty", "size")
+                    .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/tty")))
+                    .start();
+            String size;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(stty.getInputStream()))) {
+                size = in.readLine();
+            }
+            if (stty.waitFor() != 0 || size == null) return 0;
+            return Integer.parseInt(size.trim().split(" ")[0]); // "rows columns"
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
     }
 
     /**
@@ -26,31 +128,130 @@ public class BoardView implements Serializable {
      * 2560 x 1440 screens as it's quite tall.
      */
     public void draw() {
-        System.out.println();
+        render();
+        if (!fullRedraw && lastFrame == null && terminalLines < countLines(frame) + MIN_SCROLL_LINES) {
+            fullRedraw = true; // The scroll region would be off the bottom of the screen
+        }
+        if (fullRedraw) {
+            write(frame);
+            return;
+        }
 
-        drawAvailAndGridHeadings();
-        drawAvailAndGridContent();
+        if (output == null) output = new StringBuilder(1024);
+        output.setLength(0);
+        if (lastFrame == null || lastLength != frame.length()) appendFirstFrame();
+        else appendChanges();
+        write(output);
 
-        System.out.println();
+        if (lastFrame == null || lastFrame.length < frame.length()) lastFrame = new char[frame.length()];
+        frame.getChars(0, frame.length(), lastFrame, 0);
+        lastLength = frame.length();
+    }
 
-        drawCemeteryHeadings();
-        drawCemeteryContent();
+    /**
+     * Puts the terminal back how it was found, i.e. lets the whole
+     * screen scroll again. Call once nothing more will be drawn.
+     */
+    public void restoreTerminal() {
+        if (fullRedraw || lastFrame == null) return;
+        write(CSI + "r" + CSI + "999;1H");
+        lastFrame = null;
+    }
 
-        System.out.println();
+    /**
+     * Clears the screen and writes the frame at the top, then limits
+     * scrolling to the lines below it
+     */
+    private void appendFirstFrame() {
+        int lines = countLines(frame);
+        output.append(CSI).append('r').append(CSI).append('H').append(CSI).append("2J");
+        output.append(frame);
+        output.append(CSI).append(lines + 1).append('r');
+        output.append(CSI).append(lines + 1).append(";1H");
     }
 
+    /**
+     * Writes only the runs of characters that differ from the last frame,
+     * each one after a cursor move to where it starts. The cursor is saved
+     * and restored around them so typing carries on where it was.
+     */
+    private void appendChanges() {
+        int start = output.length();
+        output.append(SAVE_CURSOR);
+        int row = 1;
+        int lineStart = 0;
+        while (lineStart < lastLength) {
+            int lineEnd = lineStart;
+            while (lineEnd < lastLength && frame.charAt(lineEnd) != '\n' && frame.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+
+            int i = lineStart;
+            while (i < lineEnd) {
+                if (frame.charAt(i) == lastFrame[i]) {
+                    i++;
+                    continue;
+                }
+                // Extend the run over any short stretches of unchanged characters
+                int runEnd = i + 1;
+                for (int j = runEnd; j < lineEnd && j - runEnd < MAX_GAP; j++) {
+                    if (frame.charAt(j) != lastFrame[j]) runEnd = j + 1;
+                }
+                output.append(CSI).append(row).append(';').append(i - lineStart + 1).append('H');
+                output.append(frame, i, runEnd);
+                i = runEnd;
+            }
+
+            lineStart = lineEnd;
+            while (lineStart < lastLength && frame.charAt(lineStart) == '\r') lineStart++;
+            if (lineStart < lastLength && frame.charAt(lineStart) == '\n') lineStart++;
+            row++;
+        }
+        if (output.length() == start + SAVE_CURSOR.length()) output.setLength(start); // Nothing changed
+        else output.append(RESTORE_CURSOR);
+    }
+
+    private static int countLines(CharSequence text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
 
     /**
-     * Draws the titles for each compartment
-     * P1/P2 Available - Pieces available to play
-     * Swords and Shields - Game Board Heading
+     * Writes text to the console in one go
+     * @param text plain ASCII, so each char is one byte
      */
-    private void drawAvailAndGridHeadings() {
-        System.out.printf("      " + round.players.get(0).name + " Available" +
-                "                                          " + "Swords and Shield" +
-                "                                     " + "P2 Available"
-        );
-        System.out.println();
+    private void write(CharSequence text) {
+        int length = text.length();
+        if (bytes == null || bytes.length < length) bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        System.out.write(bytes, 0, length);
+        System.out.flush();
+    }
+
+    /**
+     * Builds the entire game into the frame buffer without writing it anywhere
+     * @return the frame, only valid until the next call
+     */
+    CharSequence render() {
+        if (frame == null) frame = new StringBuilder(8192);
+        frame.setLength(0);
+        frame.append(NEWLINE);
+
+        drawAvailAndGridHeadings();
+        drawAvailAndGridContent();
+
+        frame.append(NEWLINE);
+
+        drawCemeteryHeadings();
+        drawCemeteryContent();
+
+        frame.append(NEWLINE);
+        return frame;
     }
 
     /**
@@ -61,35 +262,35 @@ public class BoardView implements Serializable {
      *  |  ROW CONTENT  |
      *  |               |
      *  + - - - + - - - +
+     * @param cells number of cells across
      */
-    private void drawAvailAndGridSeparator() {
-        // Top Row
-        for (int i = 0; i < 3; i++) {
-            System.out.printf("+ - - - ");
-        }
-        System.out.printf("+");
-        System.out.printf("   ");
-
-        for (int i = 0; i < 10; i++) {
-            System.out.printf("+ - - - ");
+    private static String separator(int cells) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < cells; i++) {
+            line.append("+ - - - ");
         }
-        System.out.printf("+");
-        System.out.printf("   ");
+        return line.append('+').toString();
+    }
 
-        for (int i = 0; i < 3; i++) {
-            System.out.printf("+ - - - ");
-        }
-        System.out.printf("+");
-        System.out.println();
+    /**
+     * Draws the titles for each compartment
+     * P1/P2 Available - Pieces available to play
+     * Swords and Shields - Game Board Heading
+     */
+    private void drawAvailAndGridHeadings() {
+        frame.append("      ").append(round.players.get(0).name).append(" Available")
+                .append("                                          ").append("Swords and Shield")
+                .append("                                     ").append("P2 Available")
+                .append(NEWLINE);
     }
 
     private void drawAvailAndGridContent() {
         // Draw the 10 rows of content
         for (int i = 0; i < 10; i++) {
-            drawAvailAndGridSeparator();
+            frame.append(AVAILABLE_AND_GRID_SEPARATOR);
             drawAvailAndGridRow(3*i, i);
         }
-        drawAvailAndGridSeparator();
+        frame.append(AVAILABLE_AND_GRID_SEPARATOR);
     }
 
     /**
@@ -108,164 +309,91 @@ public class BoardView implements Serializable {
      *  @param boardRow the current row being drawn
      */
     private void drawAvailAndGridRow(int iteration, int boardRow) {
+        Player green = round.getPlayerbyColor(Player.ColorIdentity.GREEN);
+        Player yellow = round.getPlayerbyColor(Player.ColorIdentity.YELLOW);
 
-        for (int drawRow = 1; drawRow <= 3; drawRow++) {
+        for (int drawRow = 0; drawRow < 3; drawRow++) {
             // P1 Available
-            int p1AvailableCounter = iteration;
-            int boardCol = 1;
-
-            System.out.printf("|");
-            while (true) {
-                if (p1AvailableCounter < round.players.get(0).piecesAvailable.size()) {
-                    Piece p = round.players.get(0).piecesAvailable.get(p1AvailableCounter);
-                    if (drawRow == 1) p.drawTopRow();
-                    if (drawRow == 2) p.drawMiddleRow();
-                    if (drawRow == 3) p.drawBottomRow();
-                    System.out.printf("|");
-                    p1AvailableCounter++;
-                } else {
-                    System.out.printf("       |");
-                }
-                // At end of the p1 available area, break to restart at 8, 16, etc
-                if (boardCol % 3 == 0 && boardCol != 0) break;
-                boardCol++;
-            }
-
-            // Gap between P2 Available and Grid
-            System.out.printf("   ");
+            frame.append('|');
+            drawPieces(round.players.get(0).piecesAvailable, iteration, 3, drawRow);
 
+            // Gap between P1 Available and Grid
+            frame.append("   ");
 
             // Game Board
-            boardCol = 0;
-            System.out.printf("|");
-
-            while (true) {
+            frame.append('|');
+            for (int boardCol = 0; boardCol < 10; boardCol++) {
                 // Drawing grid Spawners and Out of Bounds
                 if (round.board.isOutOfBoundsOnBoard(boardRow, boardCol)) {
-                    if (drawRow == 1) {
-                        System.out.printf("       |");
-                    }
-                    if (drawRow == 2) {
-                        System.out.printf("   X   |");
-                    }
-                    if (drawRow == 3) {
-                        System.out.printf("       |");
-                    }
+                    frame.append(OUT_OF_BOUNDS[drawRow]);
                 }
                 else if (round.board.isFacePosition(boardCol, boardRow)) {
-                    if (drawRow == 1) {
-                        System.out.printf("PROTECT|");
-                    }
-                    if (drawRow == 2) {
-                        System.out.printf("       |");
-                    }
-                    if (drawRow == 3) {
-                        System.out.printf("  MEE  |");
-                    }
+                    frame.append(FACE[drawRow]);
                 }
-                // If there's something on the grid at the current x/y pos, draw it in steps (row 1, 2,3)
+                // If there's something on the grid at the current x/y pos, draw its row
                 else if (round.board.isPieceAtPos(boardRow, boardCol)) {
-                    Piece p = round.board.getPieceAtPos(boardRow, boardCol);
-                    if (drawRow == 1) p.drawTopRow();
-                    if (drawRow == 2) p.drawMiddleRow();
-                    if (drawRow == 3) p.drawBottomRow();
-                    System.out.printf("|");
+                    frame.append(round.board.getPieceAtPos(boardRow, boardCol).getGlyphRow(drawRow));
                 }
-                else if (round.board.isSpawnPosition(boardCol, boardRow)) {
-                    if (!round.board.isPieceAtPos(boardRow, boardCol)) {
-                        if (drawRow == 1) {
-                            if (new Coord(boardCol, boardRow).equals(round.getPlayerbyColor(Player.ColorIdentity.GREEN).spawnPoint)) {
-                                System.out.printf(" GREEN |");
-                            }
-                            else if (new Coord(boardCol, boardRow).equals(round.getPlayerbyColor(Player.ColorIdentity.YELLOW).spawnPoint)) {
-                                System.out.printf(" YELLO |");
-                            }
-                        }
-                        if (drawRow == 2) {
-                            System.out.printf("       |");
-                        }
-                        if (drawRow == 3) {
-                            System.out.printf(" SPAWN |");
-                        }
-                    }
+                else if (isSpawnPoint(green, boardCol, boardRow)) {
+                    frame.append(GREEN_SPAWN[drawRow]);
+                }
+                else if (isSpawnPoint(yellow, boardCol, boardRow)) {
+                    frame.append(YELLOW_SPAWN[drawRow]);
                 }
                 else {
-                    System.out.printf("       |");
+                    frame.append(EMPTY[drawRow]);
                 }
-                // At end of the p1 available area, break to restart at 8, 16, etc
-                if (boardCol % 9 == 0 && boardCol != 0) break;
-                boardCol++;
+                frame.append('|');
             }
 
-            // Gap between P2 Available and Grid
-            System.out.printf("   ");
+            // Gap between Grid and P2 Available
+            frame.append("   ");
 
             // P2 Available
-            int p2AvailableCounter = iteration;
-            boardCol = 1;
-
-            System.out.printf("|");
-            while (true) {
-                if (p2AvailableCounter < round.players.get(1).piecesAvailable.size()) {
-                    Piece p = round.players.get(1).piecesAvailable.get(p2AvailableCounter);
-                    if (drawRow == 1) p.drawTopRow();
-                    if (drawRow == 2) p.drawMiddleRow();
-                    if (drawRow == 3) p.drawBottomRow();
-                    System.out.printf("|");
-                    p2AvailableCounter++;
-                } else {
-                    System.out.printf("       |");
-                }
-                // At end of the p1 available area, break to restart at 8, 16, etc
-                if (boardCol % 3 == 0 && boardCol != 0) break;
-                boardCol++;
-            }
+            frame.append('|');
+            drawPieces(round.players.get(1).piecesAvailable, iteration, 3, drawRow);
 
             // End of row
-            System.out.println();
+            frame.append(NEWLINE);
         }
     }
 
-    /**
-     * Draws the titles for each compartment
-     * P1/P2 Cemetery - Pieces in the cemetery, cannot be used.
-     */
-    private void drawCemeteryHeadings() {
-        System.out.println( "                           " + "P1 Cemetery" +
-                            "                                                             " +
-                            "P2 Cemetery");
+    private static boolean isSpawnPoint(Player player, int x, int y) {
+        return player.spawnPoint.getX() == x && player.spawnPoint.getY() == y;
     }
 
     /**
-     * Grid coordinate separator.
-     * I.E.
-     *  + - - - + - - - +  < -- This is the separator
-     *  |               |
-     *  |  ROW CONTENT  |
-     *  |               |
-     *  + - - - + - - - +
+     * Draws one row of a run of cells holding pieces from a list,
+     * empty cells are drawn once the list runs out
+     * @param pieces list of pieces to draw from
+     * @param start index of the first piece to draw
+     * @param cells number of cells to draw
+     * @param drawRow row of the cells to draw, 0 - 2
      */
-    private void drawCemeterySeparator() {
-        // Top Row
-        for (int i = 0; i < 8; i++) {
-            System.out.printf("+ - - - ");
+    private void drawPieces(List<Piece> pieces, int start, int cells, int drawRow) {
+        for (int i = start; i < start + cells; i++) {
+            if (i < pieces.size()) frame.append(pieces.get(i).getGlyphRow(drawRow));
+            else frame.append(EMPTY[drawRow]);
+            frame.append('|');
         }
-        System.out.printf("+");
-        System.out.printf("       ");
+    }
 
-        for (int i = 0; i < 8; i++) {
-            System.out.printf("+ - - - ");
-        }
-        System.out.printf("+");
-        System.out.println();
+    /**
+     * Draws the titles for each compartment
+     * P1/P2 Cemetery - Pieces in the cemetery, cannot be used.
+     */
+    private void drawCemeteryHeadings() {
+        frame.append("                           ").append("P1 Cemetery")
+                .append("                                                             ")
+                .append("P2 Cemetery").append(NEWLINE);
     }
 
     private void drawCemeteryContent() {
         for (int i = 0; i < 3; i++) {
-            drawCemeterySeparator();
+            frame.append(CEMETERY_SEPARATOR);
             drawCemeteryRow(3*i);
         }
-        drawCemeterySeparator();
+        frame.append(CEMETERY_SEPARATOR);
     }
 
 
@@ -284,55 +412,19 @@ public class BoardView implements Serializable {
      *                      etc
      */
     private void drawCemeteryRow(int iteration) {
-        for (int drawRow = 1; drawRow <= 3; drawRow++) {
-
+        for (int drawRow = 0; drawRow < 3; drawRow++) {
             // P1 Cemetery
-            int p1Cemetery = iteration;
-            int boardCol = 1;
-
-            System.out.printf("|");
-            while (true) {
-                if (p1Cemetery < round.players.get(0).piecesCemetery.size()) {
-                    Piece p = round.players.get(0).piecesCemetery.get(p1Cemetery);
-                    if (drawRow == 1) p.drawTopRow();
-                    if (drawRow == 2) p.drawMiddleRow();
-                    if (drawRow == 3) p.drawBottomRow();
-                    System.out.printf("|");
-                    p1Cemetery++;
-                } else {
-                    System.out.printf("       |");
-                }
-                // At end of the p1 available area, break to restart at 8, 16, etc
-                if (boardCol % 8 == 0 && boardCol != 0) break;
-                boardCol++;
-            }
-            System.out.printf("   ");
+            frame.append('|');
+            drawPieces(round.players.get(0).piecesCemetery, iteration, 8, drawRow);
 
             // Gap between P1 Cemetery and P2 Cemetery
-            System.out.printf("    ");
+            frame.append("       ");
 
             // P2 Cemetery
-            int p2Cemetery = iteration;
-            boardCol = 1;
-
-            System.out.printf("|");
-            while (true) {
-                if (p2Cemetery < round.players.get(1).piecesCemetery.size()) {
-                    Piece p = round.players.get(1).piecesCemetery.get(p2Cemetery);
-                    if (drawRow == 1) p.drawTopRow();
-                    if (drawRow == 2) p.drawMiddleRow();
-                    if (drawRow == 3) p.drawBottomRow();
-                    System.out.printf("|");
-                    p2Cemetery++;
-                } else {
-                    System.out.printf("       |");
-                }
-                // At end of the p1 available area, break to restart at 8, 16, etc
-                if (boardCol % 8 == 0 && boardCol != 0) break;
-                boardCol++;
-            }
+            frame.append('|');
+            drawPieces(round.players.get(1).piecesCemetery, iteration, 8, drawRow);
 
-            System.out.println();
+            frame.append(NEWLINE);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,13 @@
 package swordandshield.views;
 
+import swordandshield.models.MoveGenerator;
 import swordandshield.models.Player;
 import swordandshield.models.Round;
 import swordandshield.controllers.parsingController.Parser;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -15,6 +17,15 @@ import java.util.regex.Pattern;
  */
 public class UserIOView implements Serializable {
 
+    private static final int PASS = 1 << MoveGenerator.PASS;
+    private static final int CREATE = 1 << MoveGenerator.CREATE;
+    private static final int MOVE = 1 << MoveGenerator.MOVE;
+    private static final int ROTATE = 1 << MoveGenerator.ROTATE;
+    private static final int UNDO = 1 << MoveGenerator.UNDO;
+
+    // Read only list of the Patterns of every set of allowed actions, see Round.allowedActions()
+    private static final List<Pattern>[] CHOICES = buildChoices();
+
     /**
      * Displays the text below the board displaying the
      * current players information.
@@ -45,46 +56,50 @@ public class UserIOView implements Serializable {
     /**
      * Given a round, we ascertain given the state of the player's turn,
      * what the player can do. if he can move, if can rotate. If he cannot
-     * create pieces etc.
+     * create pieces etc, and displays it.
      * @param round the round object to determine the player choices
-     * @return List of actions that can be executed by the user
      */
-    public List<Pattern> outputPlayerChoices(Round round) {
-        List<Pattern> choices = new ArrayList<>();
+    public void outputPlayerChoices(Round round) {
+        System.out.println(choicesText(round, round.allowedActions()));
+    }
 
-        choices.add(Parser.pass); // Can always pass
-        if (round.currPlayer.isStartOfTurn()) {
-            if (round.currPlayer.isFirstTurn()) {
-                choices.add(Parser.create);
-                System.out.println("Your options: Create or Pass. If you need help with syntax, type help");
-                return choices;
-            }
-            // If it gets to here, there must be something on the board. I.E we created.
-            if (!round.board.isPieceAtPos(round.currPlayer.spawnPoint)) {
-                System.out.println("Your options: Create, Pass, Move, Rotate or Undo. If you need help with syntax, type help");
-                choices.add(Parser.rotate);
-                choices.add(Parser.move);
-                choices.add(Parser.create);
-                choices.add(Parser.undo);
-            }
-            else {
-                System.out.println("Your options: Rotate, Move, Pass or Undo. If you need help with syntax, type help");
-                choices.add(Parser.rotate);
-                choices.add(Parser.move);
-                choices.add(Parser.undo);
-            }
+    /**
+     * Same choices as outputPlayerChoices() without displaying anything,
+     * e.g. for commands read from a script
+     * @param round the round object to determine the player choices
+     * @return List of actions that can be executed by the user, read only
+     */
+    public List<Pattern> playerChoices(Round round) {
+        return CHOICES[round.allowedActions()];
+    }
+
+    private static String choicesText(Round round, int allowed) {
+        if (allowed == (PASS | CREATE)) {
+            return "Your options: Create or Pass. If you need help with syntax, type help";
         }
-        else if (round.currPlayer.isEndOfTurn()) {
-            System.out.println("You do not have any moves left in your turn. Undo or Pass to the next player");
-            choices.add(Parser.undo);
+        if ((allowed & CREATE) != 0) {
+            return "Your options: Create, Pass, Move, Rotate or Undo. If you need help with syntax, type help";
         }
-        // If something is moved/rotated or a piece is created, it physically cannot be the start on the turn.
-        else {
-            System.out.println("Your options: Rotate, Move, Undo or Pass. If you need help with syntax, type help");
-            choices.add(Parser.pass);
-            choices.add(Parser.rotate);
-            choices.add(Parser.move);
-            choices.add(Parser.undo);
+        if ((allowed & MOVE) == 0) {
+            return "You do not have any moves left in your turn. Undo or Pass to the next player";
+        }
+        if (round.currPlayer.isStartOfTurn()) {
+            return "Your options: Rotate, Move, Pass or Undo. If you need help with syntax, type help";
+        }
+        return "Your options: Rotate, Move, Undo or Pass. If you need help with syntax, type help";
+    }
+
+    private static List<Pattern>[] buildChoices() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Pattern>[] choices = new List[1 << (MoveGenerator.UNDO + 1)];
+        for (int allowed = 0; allowed < choices.length; allowed++) {
+            List<Pattern> list = new ArrayList<>();
+            if ((allowed & PASS) != 0) list.add(Parser.pass);
+            if ((allowed & ROTATE) != 0) list.add(Parser.rotate);
+            if ((allowed & MOVE) != 0) list.add(Parser.move);
+            if ((allowed & CREATE) != 0) list.add(Parser.create);
+            if ((allowed & UNDO) != 0) list.add(Parser.undo);
+            choices[allowed] = Collections.unmodifiableList(list);
         }
         return choices;
     }
@@ -103,6 +118,9 @@ public class UserIOView implements Serializable {
                 "If you wish to undo your last move: (NOTE: Can only undo to start of your turn):\n" +
                 "\t - undo\n" +
                 "If you wish to end your turn (when you are allowed to):\n" +
-                "\t - pass\n");
+                "\t - pass\n" +
+                "If you wish to save the game to a file, or carry on a saved game:\n" +
+                "\t - save <file>\n" +
+                "\t - load <file>\n");
     }
 }